@@ -0,0 +1,27 @@
+package com.denos.bankcards.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Ключи шифрования данных карт, отдельные от секрета JWT.
+ * Ключ с id 0 выводится из legacySecret (SHA-256) — им зашифрованы номера, созданные до появления
+ * связки ключей. Остальные ключи задаются в Base64 (16, 24 или 32 байта), новые данные шифруются
+ * ключом activeKeyId. fingerprintKey (Base64, не короче 32 байт) — ключ HMAC-отпечатков номеров,
+ * он не ротируется вместе с ключами шифрования.
+ */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "security.card-keys")
+public class CardKeyProperties {
+    private String legacySecret;
+    private int activeKeyId;
+    private Map<Integer, String> keys = new HashMap<>();
+    private String fingerprintKey;
+}
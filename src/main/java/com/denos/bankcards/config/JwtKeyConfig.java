@@ -0,0 +1,23 @@
+package com.denos.bankcards.config;
+
+import com.denos.bankcards.enums.JwtAlgorithm;
+import com.denos.bankcards.security.JwtSigningKey;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class JwtKeyConfig {
+
+    @Bean
+    public JwtSigningKey jwtSigningKey(@Value("${security.jwt.algorithm}") JwtAlgorithm algorithm,
+                                       @Value("${security.jwt.secret}") String secret,
+                                       @Value("${security.jwt.es256.private-key}") String privateKey,
+                                       @Value("${security.jwt.es256.public-key}") String publicKey,
+                                       @Value("${security.jwt.es256.key-id}") String keyId) {
+        return switch (algorithm) {
+            case HS256 -> JwtSigningKey.hmac(secret);
+            case ES256 -> JwtSigningKey.es256(privateKey, publicKey, keyId);
+        };
+    }
+}
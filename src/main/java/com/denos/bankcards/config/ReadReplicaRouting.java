@@ -0,0 +1,57 @@
+package com.denos.bankcards.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+
+/**
+ * Чтение с реплики. Если задан bank.datasource.replica.jdbc-url, DataSource приложения оборачивается
+ * в LazyConnectionDataSourceProxy: соединение берётся при первом SQL, и если транзакция помечена readOnly
+ * (@Transactional(readOnly = true), методы чтения репозиториев Spring Data), — из пула реплики, иначе из основной БД.
+ * Выбор держится до конца сессии Hibernate, поэтому spring.jpa.open-in-view выключен. Поиск пользователя
+ * для аутентификации и ключа идемпотентности объявлен в репозиториях с @Transactional и всегда идёт в основную БД:
+ * отставшая реплика не должна решать, кто пользователь и выполнялся ли уже перевод.
+ * Без jdbc-url DataSource не меняется.
+ */
+@Component
+public class ReadReplicaRouting implements BeanPostProcessor, DisposableBean {
+
+    private static final String DATA_SOURCE = "dataSource";
+    private static final String REPLICA = "bank.datasource.replica";
+
+    private final HikariDataSource replica;
+    private final long retryAfterMs;
+
+    public ReadReplicaRouting(Environment environment) {
+        Binder binder = Binder.get(environment);
+        // Настройки пула реплики в именах HikariConfig, как spring.datasource.hikari; пул создаётся при первом чтении
+        this.replica = environment.getProperty(REPLICA + ".jdbc-url", "").isBlank()
+                ? null
+                : binder.bind(REPLICA, Bindable.ofInstance(new HikariDataSource())).get();
+        this.retryAfterMs = binder.bind("bank.datasource.replica-retry-ms", Long.class).get();
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (replica == null || !DATA_SOURCE.equals(beanName) || !(bean instanceof DataSource primary)) {
+            return bean;
+        }
+        LazyConnectionDataSourceProxy routing = new LazyConnectionDataSourceProxy(primary);
+        routing.setReadOnlyDataSource(new ReplicaFallbackDataSource(replica, primary, retryAfterMs));
+        return routing;
+    }
+
+    @Override
+    public void destroy() {
+        if (replica != null) {
+            replica.close();
+        }
+    }
+}
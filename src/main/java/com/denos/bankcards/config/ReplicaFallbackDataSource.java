@@ -0,0 +1,56 @@
+package com.denos.bankcards.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Соединения для чтения: из пула реплики, а если реплика соединения не отдала — из основной БД.
+ * После отказа реплика пропускается retryAfterMs, чтобы каждое чтение не ждало connection-timeout её пула.
+ */
+@Slf4j
+public class ReplicaFallbackDataSource extends DelegatingDataSource {
+
+    private final DataSource primary;
+    private final long retryAfterMs;
+    private volatile long replicaRetryAt;
+
+    public ReplicaFallbackDataSource(DataSource replica, DataSource primary, long retryAfterMs) {
+        super(replica);
+        this.primary = primary;
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return connect(DataSource::getConnection);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return connect(dataSource -> dataSource.getConnection(username, password));
+    }
+
+    public boolean isReplicaAvailable() {
+        return System.currentTimeMillis() >= replicaRetryAt;
+    }
+
+    private Connection connect(ConnectionSource source) throws SQLException {
+        if (isReplicaAvailable()) {
+            try {
+                return source.from(obtainTargetDataSource());
+            } catch (SQLException ex) {
+                replicaRetryAt = System.currentTimeMillis() + retryAfterMs;
+                log.warn("Реплика недоступна, чтение идёт в основную БД следующие {} мс", retryAfterMs, ex);
+            }
+        }
+        return source.from(primary);
+    }
+
+    private interface ConnectionSource {
+        Connection from(DataSource dataSource) throws SQLException;
+    }
+}
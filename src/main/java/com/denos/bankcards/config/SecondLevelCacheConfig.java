@@ -0,0 +1,79 @@
+package com.denos.bankcards.config;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
+import java.net.URI;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Регионы кэша второго уровня Hibernate. Все регионы создаются здесь явно с ограничением размера
+ * (вытеснение по частоте обращений, W-TinyLFU) и временем жизни; регион, которого нет в списке,
+ * останавливает запуск (hibernate.javax.cache.missing_cache_strategy: fail).
+ */
+@Configuration
+public class SecondLevelCacheConfig {
+
+    public static final String ROLES = "roles";
+    public static final String USERS = "users";
+    public static final String USER_ROLES = "users.roles";
+    public static final String USERS_BY_USERNAME = "users.by-username";
+    public static final String DEFAULT_QUERIES = RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME;
+    public static final String UPDATE_TIMESTAMPS = RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME;
+
+    public static final List<String> REGIONS =
+            List.of(ROLES, USERS, USER_ROLES, USERS_BY_USERNAME, DEFAULT_QUERIES, UPDATE_TIMESTAMPS);
+
+    private static final long ROLES_MAX_SIZE = 64;
+
+    @Bean(destroyMethod = "close")
+    public CacheManager hibernateCacheManager(@Value("${bank.hibernate-cache.users.max-size}") long usersMaxSize,
+                                              @Value("${bank.hibernate-cache.users.ttl-ms}") long usersTtlMs,
+                                              @Value("${bank.hibernate-cache.queries.max-size}") long queriesMaxSize,
+                                              @Value("${bank.hibernate-cache.queries.ttl-ms}") long queriesTtlMs) {
+        CachingProvider provider = Caching.getCachingProvider(CaffeineCachingProvider.class.getName());
+        // Свой URI у каждого контекста: провайдер отдаёт один менеджер на URI, а регионы создаются заново
+        URI uri = URI.create("bank-rest-hibernate-" + UUID.randomUUID());
+        CacheManager cacheManager = provider.getCacheManager(uri, getClass().getClassLoader());
+        cacheManager.createCache(ROLES, region(ROLES_MAX_SIZE, 0));
+        cacheManager.createCache(USERS, region(usersMaxSize, usersTtlMs));
+        cacheManager.createCache(USER_ROLES, region(usersMaxSize, usersTtlMs));
+        cacheManager.createCache(USERS_BY_USERNAME, region(queriesMaxSize, queriesTtlMs));
+        cacheManager.createCache(DEFAULT_QUERIES, region(queriesMaxSize, queriesTtlMs));
+        // Отметки времени изменения таблиц нельзя вытеснять, иначе запросы вернут устаревший результат;
+        // ключей в регионе столько, сколько таблиц
+        cacheManager.createCache(UPDATE_TIMESTAMPS, region(0, 0));
+        return cacheManager;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer hibernateCacheManagerCustomizer(CacheManager hibernateCacheManager) {
+        return properties -> properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+    }
+
+    // 0 - без ограничения. Значения хранятся по ссылке: Hibernate кладёт в кэш неизменяемые разобранные записи
+    private static CaffeineConfiguration<Object, Object> region(long maxSize, long ttlMs) {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        configuration.setStoreByValue(false);
+        configuration.setStatisticsEnabled(true);
+        if (maxSize > 0) {
+            configuration.setMaximumSize(OptionalLong.of(maxSize));
+        }
+        if (ttlMs > 0) {
+            configuration.setExpireAfterWrite(OptionalLong.of(TimeUnit.MILLISECONDS.toNanos(ttlMs)));
+        }
+        return configuration;
+    }
+}
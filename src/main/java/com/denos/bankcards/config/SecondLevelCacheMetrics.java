@@ -0,0 +1,58 @@
+package com.denos.bankcards.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.JCacheMetrics;
+import org.springframework.stereotype.Component;
+
+import javax.cache.CacheManager;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Метрики регионов кэша второго уровня: cache.gets/puts/removals от JCacheMetrics и cache.hit.ratio
+ * по каждому региону с тегом cache, как у остальных кэшей приложения. Статистику JCache провайдер
+ * публикует в JMX (CacheStatisticsMXBean), включена для всех регионов в SecondLevelCacheConfig.
+ */
+@Component
+public class SecondLevelCacheMetrics implements MeterBinder {
+
+    private final CacheManager cacheManager;
+    private final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+
+    public SecondLevelCacheMetrics(CacheManager hibernateCacheManager) {
+        this.cacheManager = hibernateCacheManager;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (String region : SecondLevelCacheConfig.REGIONS) {
+            JCacheMetrics.monitor(registry, cacheManager.getCache(region), "layer", "hibernate");
+            Gauge.builder("cache.hit.ratio", this, metrics -> metrics.hitRatio(region))
+                    .tag("cache", region)
+                    .register(registry);
+        }
+    }
+
+    /**
+     * Доля попаданий в регион от 0 до 1, NaN пока к региону не обращались. Имена URI менеджера и регионов
+     * не содержат символов, которые провайдер заменяет в ObjectName.
+     */
+    double hitRatio(String region) {
+        try {
+            ObjectName name = new ObjectName("javax.cache:type=CacheStatistics,CacheManager="
+                    + cacheManager.getURI() + ",Cache=" + region);
+            if (!mBeanServer.isRegistered(name)) {
+                return Double.NaN;
+            }
+            long hits = ((Number) mBeanServer.getAttribute(name, "CacheHits")).longValue();
+            long misses = ((Number) mBeanServer.getAttribute(name, "CacheMisses")).longValue();
+            return hits + misses == 0 ? Double.NaN : (double) hits / (hits + misses);
+        } catch (JMException e) {
+            return Double.NaN;
+        }
+    }
+}
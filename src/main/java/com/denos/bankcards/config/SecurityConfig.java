@@ -1,8 +1,13 @@
 package com.denos.bankcards.config;
 
+import com.denos.bankcards.enums.PrincipalMode;
+import com.denos.bankcards.security.BoundedPasswordEncoder;
 import com.denos.bankcards.security.JwtAuthenticationFilter;
 import com.denos.bankcards.security.JwtUtil;
+import com.denos.bankcards.security.UserSecurityEpochs;
 import com.denos.bankcards.service.CustomUserDetailsService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
@@ -20,23 +25,33 @@ public class SecurityConfig {
 
     private final JwtUtil jwtUtil;
     private final CustomUserDetailsService userDetailsService;
+    private final UserSecurityEpochs securityEpochs;
+    private final PrincipalMode principalMode;
 
-    public SecurityConfig(JwtUtil jwtUtil, CustomUserDetailsService userDetailsService) {
+    public SecurityConfig(JwtUtil jwtUtil,
+                          CustomUserDetailsService userDetailsService,
+                          UserSecurityEpochs securityEpochs,
+                          @Value("${security.jwt.principal-mode}") PrincipalMode principalMode) {
         this.jwtUtil = jwtUtil;
         this.userDetailsService = userDetailsService;
+        this.securityEpochs = securityEpochs;
+        this.principalMode = principalMode;
     }
 
     @Bean
     public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
-        var jwtFilter = new JwtAuthenticationFilter(jwtUtil, userDetailsService);
+        var jwtFilter = new JwtAuthenticationFilter(jwtUtil, userDetailsService, securityEpochs, principalMode);
 
         http
                 .csrf(AbstractHttpConfigurer::disable)
                 .cors(cors -> {})
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .authorizeHttpRequests(auth -> auth
-                        .requestMatchers("/api/auth/**", "/api/users/register", "/swagger-ui.html", "/v3/api-docs/**", "/swagger-ui/**").permitAll()
+                        .requestMatchers("/api/auth/**", "/api/users/register", "/swagger-ui.html", "/v3/api-docs/**", "/swagger-ui/**",
+                                "/.well-known/jwks.json").permitAll()
                         .requestMatchers("/api/admin/**").hasRole("ADMIN")
+                        .requestMatchers("/actuator/health").permitAll()
+                        .requestMatchers("/actuator/**").hasRole("ADMIN")
                         .anyRequest().authenticated()
                 )
                 .addFilterBefore(jwtFilter, UsernamePasswordAuthenticationFilter.class);
@@ -45,7 +60,10 @@ public class SecurityConfig {
     }
 
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(@Value("${security.password-hashing.pool-size}") int poolSize,
+                                           @Value("${security.password-hashing.queue-capacity}") int queueCapacity,
+                                           @Value("${security.password-hashing.timeout-ms}") long timeoutMs,
+                                           MeterRegistry meterRegistry) {
+        return new BoundedPasswordEncoder(new BCryptPasswordEncoder(), poolSize, queueCapacity, timeoutMs, meterRegistry);
     }
 }
\ No newline at end of file
@@ -2,53 +2,115 @@ package com.denos.bankcards.controller;
 
 import com.denos.bankcards.dto.AuthRequest;
 import com.denos.bankcards.dto.AuthResponse;
-import com.denos.bankcards.entity.User;
-import com.denos.bankcards.repository.UserRepository;
+import com.denos.bankcards.dto.RefreshRequest;
+import com.denos.bankcards.exception.InvalidRefreshTokenException;
+import com.denos.bankcards.security.ClientIpResolver;
 import com.denos.bankcards.security.JwtUtil;
+import com.denos.bankcards.security.LoginAttemptThrottle;
+import com.denos.bankcards.service.CustomUserDetailsService;
+import com.denos.bankcards.service.RefreshTokenService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.ErrorResponse;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
 import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/auth")
 public class AuthController {
 
-    private final UserRepository userRepository;
     private final PasswordEncoder encoder;
     private final JwtUtil jwtUtil;
+    private final LoginAttemptThrottle loginThrottle;
+    private final ClientIpResolver clientIpResolver;
+    private final RefreshTokenService refreshTokenService;
+    private final CustomUserDetailsService userDetailsService;
 
-    public AuthController(UserRepository userRepository, PasswordEncoder encoder, JwtUtil jwtUtil) {
-        this.userRepository = userRepository;
+    public AuthController(PasswordEncoder encoder, JwtUtil jwtUtil,
+                          LoginAttemptThrottle loginThrottle, ClientIpResolver clientIpResolver,
+                          RefreshTokenService refreshTokenService, CustomUserDetailsService userDetailsService) {
         this.encoder = encoder;
         this.jwtUtil = jwtUtil;
+        this.loginThrottle = loginThrottle;
+        this.clientIpResolver = clientIpResolver;
+        this.refreshTokenService = refreshTokenService;
+        this.userDetailsService = userDetailsService;
     }
 
     @Operation(
             summary = "Аутентификация пользователя",
-            description = "Выполняет вход пользователя в систему и возвращает JWT токен"
+            description = "Выполняет вход пользователя в систему и возвращает JWT токен и refresh-токен"
     )
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Успешная аутентификация",
                     content = @Content(schema = @Schema(implementation = AuthResponse.class))),
             @ApiResponse(responseCode = "400", description = "Неверные учетные данные",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "429", description = "Слишком много попыток входа",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "503", description = "Проверка паролей перегружена, повторите позже",
                     content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
     })
     @PostMapping("/login")
-    public AuthResponse login(@RequestBody AuthRequest req) {
-        User u = userRepository.findByUsername(req.getUsername())
-                .orElseThrow(() -> new RuntimeException("Invalid credentials"));
-        if (!encoder.matches(req.getPassword(), u.getPassword())) {
+    public AuthResponse login(@RequestBody AuthRequest req, HttpServletRequest request) {
+        loginThrottle.acquire(req.getUsername(), clientIpResolver.resolve(request));
+        // Пользователь берётся из того же кэша, что и при проверке токенов, а не отдельным запросом к БД
+        UserDetails user;
+        try {
+            user = userDetailsService.loadUserByUsername(req.getUsername());
+        } catch (UsernameNotFoundException ex) {
             throw new RuntimeException("Invalid credentials");
         }
-        var roles = u.getUserRoles().stream().map(r -> r.getRoleName().name()).collect(Collectors.toList());
-        String token = jwtUtil.generateToken(u.getUsername(), roles);
-        return new AuthResponse(token);
+        // Отключённому пользователю тот же ответ, что и при неверном пароле: токены ему не выдаются
+        if (!encoder.matches(req.getPassword(), user.getPassword()) || !user.isEnabled()) {
+            throw new RuntimeException("Invalid credentials");
+        }
+        loginThrottle.succeeded(user.getUsername());
+        String token = jwtUtil.generateToken(user.getUsername(), roleNames(user));
+        return new AuthResponse(token, refreshTokenService.issue(user.getUsername()));
+    }
+
+    @Operation(
+            summary = "Обновление токенов",
+            description = "Обменивает refresh-токен на новую пару JWT и refresh-токена без проверки пароля. " +
+                    "Каждый refresh-токен одноразовый, повторное использование отзывает всю цепочку"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Токены обновлены",
+                    content = @Content(schema = @Schema(implementation = AuthResponse.class))),
+            @ApiResponse(responseCode = "401", description = "Refresh-токен неизвестен, истёк или уже использован",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @PostMapping("/refresh")
+    public AuthResponse refresh(@RequestBody RefreshRequest req) {
+        RefreshTokenService.Rotation rotation = refreshTokenService.rotate(req.getRefreshToken());
+        // Роли и статус берутся из кэша пользователей, который сбрасывается при их изменении
+        UserDetails user;
+        try {
+            user = userDetailsService.loadUserByUsername(rotation.username());
+        } catch (UsernameNotFoundException ex) {
+            refreshTokenService.revokeAll(rotation.username());
+            throw new InvalidRefreshTokenException("Invalid refresh token");
+        }
+        if (!user.isEnabled()) {
+            refreshTokenService.revokeAll(user.getUsername());
+            throw new InvalidRefreshTokenException("User is disabled");
+        }
+        String token = jwtUtil.generateToken(user.getUsername(), roleNames(user));
+        return new AuthResponse(token, rotation.refreshToken());
+    }
+
+    private static List<String> roleNames(UserDetails user) {
+        return user.getAuthorities().stream().map(GrantedAuthority::getAuthority).collect(Collectors.toList());
     }
 }
@@ -1,35 +1,52 @@
 package com.denos.bankcards.controller;
 
 import com.denos.bankcards.dto.CardDto;
+import com.denos.bankcards.dto.CardLookupRequest;
 import com.denos.bankcards.dto.CardRequest;
+import com.denos.bankcards.dto.CardSearchFilter;
+import com.denos.bankcards.dto.CursorPage;
 import com.denos.bankcards.entity.Card;
 import com.denos.bankcards.entity.User;
 import com.denos.bankcards.enums.CardStatus;
+import com.denos.bankcards.enums.RoleType;
+import com.denos.bankcards.exception.DuplicateCardException;
 import com.denos.bankcards.repository.CardRepository;
+import com.denos.bankcards.repository.CardSpecifications;
 import com.denos.bankcards.repository.UserRepository;
+import com.denos.bankcards.repository.projection.CardRow;
+import com.denos.bankcards.security.RoleRegistry;
 import com.denos.bankcards.util.CryptoUtil;
 import io.swagger.v3.oas.annotations.Operation;
-import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import org.springdoc.core.annotations.ParameterObject;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.ErrorResponse;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 @RestController
 @RequestMapping("/api/cards")
 public class CardController {
 
+    public static final int MAX_PAGE_SIZE = CursorPage.MAX_LIMIT;
+
     private final CardRepository cardRepository;
     private final UserRepository userRepository;
     private final CryptoUtil cryptoUtil;
@@ -42,23 +59,58 @@ public class CardController {
 
     @Operation(
             summary = "Получение всех карт",
-            description = "Возвращает список всех карт в системе. Только для администраторов."
+            description = "Возвращает карты системы постранично по возрастанию ID. Следующая страница запрашивается " +
+                    "с курсором из nextCursor. Только для администраторов."
     )
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Успешный запрос",
-                    content = @Content(array = @ArraySchema(schema = @Schema(implementation = CardDto.class)))),
+                    content = @Content(schema = @Schema(implementation = CursorPage.class))),
+            @ApiResponse(responseCode = "400", description = "Некорректный курсор или размер страницы",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
             @ApiResponse(responseCode = "403", description = "Доступ запрещен",
                     content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
     })
     @PreAuthorize("hasRole('ADMIN')")
+    @Transactional(readOnly = true)
     @GetMapping("/all")
-    public List<CardDto> getAllCards() {
-        return cardRepository.findAll().stream()
-                .map(card -> {
-                    String decrypted = cryptoUtil.decrypt(card.getCardNumberEncrypted());
-                    return CardDto.fromEntity(card, CryptoUtil.maskCardNumber(decrypted));
-                })
-                .toList();
+    public CursorPage<CardDto> getAllCards(
+            @Parameter(description = "Курсор из nextCursor предыдущей страницы") @RequestParam(required = false) String cursor,
+            @Parameter(description = "Размер страницы, не больше " + MAX_PAGE_SIZE) @RequestParam(defaultValue = "50") int limit,
+            @Parameter(description = "Фильтр по статусу") @RequestParam(required = false) CardStatus status,
+            @Parameter(description = "Фильтр по ID пользователя") @RequestParam(required = false) Long userId) {
+        CursorPage.checkLimit(limit);
+        List<CardRow> rows = cardRepository.findRowsAfter(CursorPage.decodeCursor(cursor), status, userId, Limit.of(limit + 1));
+        return CursorPage.of(rows, limit, CardRow::id, row -> CardDto.fromRow(row, cryptoUtil));
+    }
+
+    @Operation(
+            summary = "Поиск карт",
+            description = "Ищет карты по статусу, сроку действия, началу имени владельца и пользователю. " +
+                    "Результат постраничный по возрастанию ID, как в /all. Только для администраторов."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Успешный запрос",
+                    content = @Content(schema = @Schema(implementation = CursorPage.class))),
+            @ApiResponse(responseCode = "400", description = "Некорректные фильтры, курсор или размер страницы",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "403", description = "Доступ запрещен",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @PreAuthorize("hasRole('ADMIN')")
+    @Transactional(readOnly = true)
+    @GetMapping("/search")
+    public CursorPage<CardDto> searchCards(
+            @ParameterObject CardSearchFilter filter,
+            @Parameter(description = "Курсор из nextCursor предыдущей страницы") @RequestParam(required = false) String cursor,
+            @Parameter(description = "Размер страницы, не больше " + MAX_PAGE_SIZE) @RequestParam(defaultValue = "50") int limit) {
+        CursorPage.checkLimit(limit);
+        if (filter.getExpiresFrom() != null && filter.getExpiresTo() != null
+                && filter.getExpiresFrom().isAfter(filter.getExpiresTo())) {
+            throw new IllegalArgumentException("expiresFrom не может быть позже expiresTo");
+        }
+        List<Card> rows = cardRepository.findBy(CardSpecifications.matching(filter, CursorPage.decodeCursor(cursor)),
+                q -> q.sortBy(Sort.by("id")).limit(limit + 1).all());
+        return CursorPage.of(rows, limit, Card::getId, this::toDto);
     }
 
     @Operation(
@@ -72,14 +124,11 @@ public class CardController {
                     content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
     })
     @PreAuthorize("hasRole('USER')")
+    @Transactional(readOnly = true)
     @GetMapping
     public Page<CardDto> getMyCards(@AuthenticationPrincipal UserDetails userDetails, Pageable pageable) {
-        User user = userRepository.findByUsername(userDetails.getUsername()).orElseThrow();
-        return cardRepository.findByUser(user, pageable)
-                .map(card -> {
-                    String decrypted = cryptoUtil.decrypt(card.getCardNumberEncrypted());
-                    return CardDto.fromEntity(card, CryptoUtil.maskCardNumber(decrypted));
-                });
+        return cardRepository.findRowsByUsername(userDetails.getUsername(), pageable)
+                .map(row -> CardDto.fromRow(row, cryptoUtil));
     }
 
     @Operation(
@@ -92,23 +141,58 @@ public class CardController {
             @ApiResponse(responseCode = "400", description = "Некорректные данные",
                     content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
             @ApiResponse(responseCode = "403", description = "Доступ запрещен",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "409", description = "Карта с таким номером уже существует",
                     content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
     })
     @PreAuthorize("hasRole('ADMIN')")
     @PostMapping
     public CardDto createCard(@RequestBody CardRequest req) {
         User user = userRepository.findById(req.getUserId()).orElseThrow();
+        byte[] fingerprint = cryptoUtil.fingerprint(req.getCardNumber());
+        if (cardRepository.findByPanFingerprint(fingerprint).isPresent()) {
+            throw new DuplicateCardException("Карта с таким номером уже существует");
+        }
         Card card = Card.builder()
                 .ownerName(req.getOwnerName())
                 .expiryMonth(req.getExpiryMonth())
                 .expiryYear(req.getExpiryYear())
-                .cardNumberEncrypted(cryptoUtil.encrypt(req.getCardNumber()))
+                .cardNumberCipher(cryptoUtil.encryptToBytes(req.getCardNumber()))
+                .panLast4(CryptoUtil.lastFour(req.getCardNumber()))
+                .panFingerprint(fingerprint)
                 .status(CardStatus.ACTIVE)
                 .balance(BigDecimal.ZERO)
                 .user(user)
                 .build();
-        cardRepository.save(card);
-        return CardDto.fromEntity(card, CryptoUtil.maskCardNumber(req.getCardNumber()));
+        try {
+            cardRepository.saveAndFlush(card);
+        } catch (DataIntegrityViolationException ex) {
+            // Параллельное создание той же карты прошло проверку выше; его отсекает уникальный индекс pan_fingerprint
+            if (cardRepository.findByPanFingerprint(fingerprint).isPresent()) {
+                throw new DuplicateCardException("Карта с таким номером уже существует");
+            }
+            throw ex;
+        }
+        return CardDto.fromEntity(card);
+    }
+
+    @Operation(
+            summary = "Поиск карты по номеру",
+            description = "Находит карту по полному номеру через HMAC-отпечаток, без расшифровки. Только для администраторов."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Карта найдена",
+                    content = @Content(schema = @Schema(implementation = CardDto.class))),
+            @ApiResponse(responseCode = "403", description = "Доступ запрещен",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "404", description = "Карта не найдена")
+    })
+    @PreAuthorize("hasRole('ADMIN')")
+    @Transactional(readOnly = true)
+    @PostMapping("/lookup")
+    public ResponseEntity<CardDto> findByNumber(@RequestBody CardLookupRequest req) {
+        return ResponseEntity.of(cardRepository.findByPanFingerprint(cryptoUtil.fingerprint(req.getCardNumber()))
+                .map(this::toDto));
     }
 
     @Operation(
@@ -125,15 +209,15 @@ public class CardController {
     @PreAuthorize("hasAnyRole('ADMIN','USER')")
     @PostMapping("/{id}/block")
     public void blockCard(@AuthenticationPrincipal UserDetails userDetails, @PathVariable Long id) {
-        Card card = cardRepository.findById(id).orElseThrow();
-
-        if (!userDetails.getAuthorities().stream().anyMatch(a -> a.getAuthority().equals("ROLE_ADMIN"))
-                && !card.getUser().getUsername().equals(userDetails.getUsername())) {
+        // Один UPDATE с проверкой владельца; причина отказа выясняется только если строка не изменилась
+        boolean admin = userDetails.getAuthorities().contains(RoleRegistry.authority(RoleType.ROLE_ADMIN));
+        int updated = admin ? cardRepository.block(id) : cardRepository.blockIfOwned(id, userDetails.getUsername());
+        if (updated == 0) {
+            if (!cardRepository.existsById(id)) {
+                throw new NoSuchElementException("Карта не найдена");
+            }
             throw new AccessDeniedException("Нет доступа к этой карте");
         }
-
-        card.setStatus(CardStatus.BLOCKED);
-        cardRepository.save(card);
     }
 
     @Operation(
@@ -152,4 +236,8 @@ public class CardController {
     public void deleteCard(@PathVariable Long id) {
         cardRepository.deleteById(id);
     }
+
+    private CardDto toDto(Card card) {
+        return CardDto.fromEntity(card, cryptoUtil);
+    }
 }
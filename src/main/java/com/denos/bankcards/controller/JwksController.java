@@ -0,0 +1,35 @@
+package com.denos.bankcards.controller;
+
+import com.denos.bankcards.security.JwtSigningKey;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Duration;
+import java.util.Map;
+
+@RestController
+public class JwksController {
+
+    private final JwtSigningKey signingKey;
+
+    public JwksController(JwtSigningKey signingKey) {
+        this.signingKey = signingKey;
+    }
+
+    @Operation(
+            summary = "Открытые ключи проверки JWT",
+            description = "JWK Set для локальной проверки токенов другими сервисами. " +
+                    "В режиме HS256 список ключей пуст"
+    )
+    @ApiResponse(responseCode = "200", description = "JWK Set")
+    @GetMapping("/.well-known/jwks.json")
+    public ResponseEntity<Map<String, Object>> jwks() {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(Duration.ofHours(1)).cachePublic())
+                .body(signingKey.jwks());
+    }
+}
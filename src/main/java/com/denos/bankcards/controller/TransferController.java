@@ -1,18 +1,14 @@
 package com.denos.bankcards.controller;
 
+import com.denos.bankcards.dto.BatchTransferRequest;
+import com.denos.bankcards.dto.BatchTransferResponse;
 import com.denos.bankcards.dto.TransferRequest;
-import com.denos.bankcards.entity.Card;
-import com.denos.bankcards.entity.User;
-import com.denos.bankcards.repository.CardRepository;
-import com.denos.bankcards.repository.UserRepository;
-import com.denos.bankcards.util.CryptoUtil;
+import com.denos.bankcards.service.TransferService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
-import jakarta.transaction.Transactional;
-import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -23,19 +19,16 @@ import org.springframework.web.bind.annotation.*;
 @RequestMapping("/api/transfers")
 public class TransferController {
 
-    private final CardRepository cardRepository;
-    private final UserRepository userRepository;
-    private final CryptoUtil cryptoUtil;
+    private final TransferService transferService;
 
-    public TransferController(CardRepository cardRepository, UserRepository userRepository, CryptoUtil cryptoUtil) {
-        this.cardRepository = cardRepository;
-        this.userRepository = userRepository;
-        this.cryptoUtil = cryptoUtil;
+    public TransferController(TransferService transferService) {
+        this.transferService = transferService;
     }
 
     @Operation(
             summary = "Перевод между картами",
-            description = "Выполняет перевод средств между картами текущего пользователя"
+            description = "Выполняет перевод средств между картами текущего пользователя. " +
+                    "Повтор запроса с тем же заголовком Idempotency-Key возвращает исходный результат без повторного списания."
     )
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Перевод выполнен успешно",
@@ -45,34 +38,37 @@ public class TransferController {
             @ApiResponse(responseCode = "403", description = "Доступ к картам запрещен",
                     content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
             @ApiResponse(responseCode = "404", description = "Карта не найдена",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "409", description = "Карты заняты параллельными операциями, повторите попытку",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "422", description = "Idempotency-Key уже использован для другого запроса",
                     content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
     })
     @PreAuthorize("hasAnyRole('USER','ADMIN')")
     @PostMapping
-    @Transactional
     public String transfer(@AuthenticationPrincipal UserDetails userDetails,
+                           @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
                            @RequestBody TransferRequest req) {
-        User user = userRepository.findByUsername(userDetails.getUsername()).orElseThrow();
-
-        Card from = cardRepository.findById(req.getFromCardId()).orElseThrow();
-        Card to = cardRepository.findById(req.getToCardId()).orElseThrow();
-
-        if (!from.getUser().equals(user) || !to.getUser().equals(user)) {
-            throw new AccessDeniedException("Вы можете переводить только между своими картами");
-        }
-
-        if (from.getBalance().compareTo(req.getAmount()) < 0) {
-            throw new RuntimeException("Недостаточно средств");
-        }
-
-        from.setBalance(from.getBalance().subtract(req.getAmount()));
-        to.setBalance(to.getBalance().add(req.getAmount()));
-
-        String fromMasked = CryptoUtil.maskCardNumber(cryptoUtil.decrypt(from.getCardNumberEncrypted()));
-        String toMasked = CryptoUtil.maskCardNumber(cryptoUtil.decrypt(to.getCardNumberEncrypted()));
+        return transferService.transferIdempotent(userDetails.getUsername(), req, idempotencyKey);
+    }
 
-        return String.format("Перевод %s₽ выполнен с карты %s на карту %s",
-                req.getAmount(), fromMasked, toMasked);
+    @Operation(
+            summary = "Пакетный перевод между картами",
+            description = "Выполняет список переводов между картами текущего пользователя в одной транзакции " +
+                    "и возвращает результат по каждому переводу. В режиме allOrNothing любая ошибка откатывает весь пакет."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Пакет обработан",
+                    content = @Content(schema = @Schema(implementation = BatchTransferResponse.class))),
+            @ApiResponse(responseCode = "400", description = "Пустой или слишком большой пакет",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "409", description = "Карты заняты параллельными операциями, повторите попытку",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @PreAuthorize("hasAnyRole('USER','ADMIN')")
+    @PostMapping("/batch")
+    public BatchTransferResponse transferBatch(@AuthenticationPrincipal UserDetails userDetails,
+                                               @RequestBody BatchTransferRequest req) {
+        return transferService.transferBatch(userDetails.getUsername(), req);
     }
 }
-
@@ -1,38 +1,48 @@
 package com.denos.bankcards.controller;
 
+import com.denos.bankcards.dto.CursorPage;
 import com.denos.bankcards.dto.UserDto;
 import com.denos.bankcards.dto.UserRegisterRequest;
 import com.denos.bankcards.entity.User;
 import com.denos.bankcards.enums.RoleType;
-import com.denos.bankcards.repository.RoleRepository;
 import com.denos.bankcards.repository.UserRepository;
+import com.denos.bankcards.security.RoleRegistry;
+import com.denos.bankcards.security.UserSecurityChangedEvent;
+import com.denos.bankcards.service.UserQueryService;
 import io.swagger.v3.oas.annotations.Operation;
-import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.ErrorResponse;
 import org.springframework.web.bind.annotation.*;
 
 import java.security.Principal;
-import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/users")
 public class UserController {
 
     private final UserRepository userRepository;
-    private final RoleRepository roleRepository;
+    private final RoleRegistry roleRegistry;
     private final PasswordEncoder passwordEncoder;
+    private final ApplicationEventPublisher eventPublisher;
+    private final UserQueryService userQueryService;
 
-    public UserController(UserRepository userRepository, RoleRepository roleRepository, PasswordEncoder encoder) {
+    public UserController(UserRepository userRepository, RoleRegistry roleRegistry, PasswordEncoder encoder,
+                          ApplicationEventPublisher eventPublisher, UserQueryService userQueryService) {
         this.userRepository = userRepository;
-        this.roleRepository = roleRepository;
+        this.roleRegistry = roleRegistry;
         this.passwordEncoder = encoder;
+        this.eventPublisher = eventPublisher;
+        this.userQueryService = userQueryService;
     }
 
     @Operation(
@@ -43,6 +53,8 @@ public class UserController {
             @ApiResponse(responseCode = "200", description = "Пользователь успешно создан",
                     content = @Content(schema = @Schema(implementation = UserDto.class))),
             @ApiResponse(responseCode = "400", description = "Некорректные данные",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "503", description = "Хеширование паролей перегружено, повторите позже",
                     content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
     })
     @PostMapping("/register")
@@ -54,9 +66,11 @@ public class UserController {
                 .lastName(req.getLastName())
                 .middleName(req.getMiddleName())
                 .enabled(true)
-                .userRoles(Set.of(roleRepository.findByRoleName(RoleType.ROLE_USER).orElseThrow()))
+                .userRoles(Set.of(roleRegistry.role(RoleType.ROLE_USER)))
                 .build();
         userRepository.save(user);
+        eventPublisher.publishEvent(
+                new UserSecurityChangedEvent(user.getUsername(), UserSecurityChangedEvent.Change.REGISTERED));
         return UserDto.fromEntity(user);
     }
 
@@ -71,26 +85,32 @@ public class UserController {
                     content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
     })
     @PreAuthorize("hasAnyRole('USER','ADMIN')")
+    @Transactional(readOnly = true)
     @GetMapping("/me")
     public UserDto me(Principal principal) {
-        var user = userRepository.findByUsername(principal.getName()).orElseThrow();
+        var user = userRepository.findWithRolesByUsername(principal.getName()).orElseThrow();
         return UserDto.fromEntity(user);
     }
 
     @Operation(
             summary = "Получение всех пользователей",
-            description = "Возвращает список всех пользователей системы. Только для администраторов."
+            description = "Возвращает пользователей системы с ролями постранично по возрастанию ID. Следующая страница " +
+                    "запрашивается с курсором из nextCursor. Только для администраторов."
     )
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Успешный запрос",
-                    content = @Content(array = @ArraySchema(schema = @Schema(implementation = UserDto.class)))),
+                    content = @Content(schema = @Schema(implementation = CursorPage.class))),
+            @ApiResponse(responseCode = "400", description = "Некорректный курсор или размер страницы",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
             @ApiResponse(responseCode = "403", description = "Доступ запрещен",
                     content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
     })
     @PreAuthorize("hasRole('ADMIN')")
     @GetMapping
-    public List<UserDto> all() {
-        return userRepository.findAll().stream().map(UserDto::fromEntity).toList();
+    public CursorPage<UserDto> all(
+            @Parameter(description = "Курсор из nextCursor предыдущей страницы") @RequestParam(required = false) String cursor,
+            @Parameter(description = "Размер страницы, не больше " + CursorPage.MAX_LIMIT) @RequestParam(defaultValue = "50") int limit) {
+        return userQueryService.page(cursor, limit);
     }
 
     @Operation(
@@ -107,6 +127,54 @@ public class UserController {
     @PreAuthorize("hasRole('ADMIN')")
     @DeleteMapping("/{id}")
     public void deleteUser(@PathVariable Long id) {
-        userRepository.deleteById(id);
+        userRepository.findById(id).ifPresent(user -> {
+            userRepository.delete(user);
+            eventPublisher.publishEvent(
+                    new UserSecurityChangedEvent(user.getUsername(), UserSecurityChangedEvent.Change.DELETED));
+        });
+    }
+
+    @Operation(
+            summary = "Блокировка и разблокировка пользователя",
+            description = "Включает или отключает пользователя. Токены отключённого пользователя сразу перестают действовать. Только для администраторов."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Статус пользователя изменён",
+                    content = @Content(schema = @Schema(implementation = UserDto.class))),
+            @ApiResponse(responseCode = "403", description = "Доступ запрещен",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @PreAuthorize("hasRole('ADMIN')")
+    @PutMapping("/{id}/enabled")
+    public UserDto setEnabled(@PathVariable Long id, @RequestParam boolean enabled) {
+        var user = userRepository.findWithRolesById(id).orElseThrow();
+        user.setEnabled(enabled);
+        userRepository.save(user);
+        eventPublisher.publishEvent(new UserSecurityChangedEvent(user.getUsername(),
+                enabled ? UserSecurityChangedEvent.Change.ENABLED : UserSecurityChangedEvent.Change.DISABLED));
+        return UserDto.fromEntity(user);
+    }
+
+    @Operation(
+            summary = "Изменение ролей пользователя",
+            description = "Заменяет роли пользователя. Выданные ранее токены отзываются, нужен повторный вход. Только для администраторов."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Роли изменены",
+                    content = @Content(schema = @Schema(implementation = UserDto.class))),
+            @ApiResponse(responseCode = "403", description = "Доступ запрещен",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @PreAuthorize("hasRole('ADMIN')")
+    @PutMapping("/{id}/roles")
+    public UserDto setRoles(@PathVariable Long id, @RequestBody Set<RoleType> roles) {
+        var user = userRepository.findById(id).orElseThrow();
+        user.setUserRoles(roles.stream()
+                .map(roleRegistry::role)
+                .collect(Collectors.toSet()));
+        userRepository.save(user);
+        eventPublisher.publishEvent(
+                new UserSecurityChangedEvent(user.getUsername(), UserSecurityChangedEvent.Change.ROLES_CHANGED));
+        return UserDto.fromEntity(user);
     }
 }
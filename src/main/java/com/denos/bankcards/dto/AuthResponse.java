@@ -10,4 +10,7 @@ import lombok.Data;
 public class AuthResponse {
     @Schema(description = "JWT токен", example = "eyJhbGciOiJIUzI1NiIsInR5cCI6IkpXVCJ9...")
     private String token;
+
+    @Schema(description = "Одноразовый refresh-токен для POST /api/auth/refresh", example = "q3Vx8dU0Yc1m...")
+    private String refreshToken;
 }
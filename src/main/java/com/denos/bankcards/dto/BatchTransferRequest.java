@@ -0,0 +1,16 @@
+package com.denos.bankcards.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Schema(description = "Пакетный запрос на переводы между картами")
+public class BatchTransferRequest {
+    @Schema(description = "Переводы в порядке применения")
+    private List<TransferRequest> transfers;
+
+    @Schema(description = "Все или ничего: при ошибке в любом переводе пакет откатывается целиком", example = "false")
+    private boolean allOrNothing;
+}
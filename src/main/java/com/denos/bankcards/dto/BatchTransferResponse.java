@@ -0,0 +1,32 @@
+package com.denos.bankcards.dto;
+
+import com.denos.bankcards.enums.TransferItemStatus;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Schema(description = "Результат пакетного перевода")
+public class BatchTransferResponse {
+    @Schema(description = "Количество применённых переводов", example = "9")
+    private int succeeded;
+
+    @Schema(description = "Количество отклонённых переводов", example = "1")
+    private int failed;
+
+    @Schema(description = "Результаты по каждому переводу в порядке запроса")
+    private List<TransferItemResult> results;
+
+    public static BatchTransferResponse of(List<TransferItemResult> results) {
+        BatchTransferResponse r = new BatchTransferResponse();
+        r.setResults(results);
+        r.setFailed((int) results.stream()
+                .filter(item -> item.getStatus() == TransferItemStatus.REJECTED)
+                .count());
+        r.setSucceeded((int) results.stream()
+                .filter(item -> item.getStatus() == TransferItemStatus.APPLIED)
+                .count());
+        return r;
+    }
+}
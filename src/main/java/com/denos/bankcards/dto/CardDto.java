@@ -2,6 +2,8 @@ package com.denos.bankcards.dto;
 
 import com.denos.bankcards.entity.Card;
 import com.denos.bankcards.enums.CardStatus;
+import com.denos.bankcards.repository.projection.CardRow;
+import com.denos.bankcards.util.CryptoUtil;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.Data;
 import java.math.BigDecimal;
@@ -30,6 +32,14 @@ public class CardDto {
     @Schema(description = "Баланс", example = "1000.00")
     private BigDecimal balance;
 
+    public static CardDto fromEntity(Card c) {
+        return fromEntity(c, CryptoUtil.maskLastFour(c.getPanLast4()));
+    }
+
+    public static CardDto fromEntity(Card c, CryptoUtil cryptoUtil) {
+        return fromEntity(c, masked(c.getPanLast4(), c.getCardNumberCipher(), c.getCardNumberEncrypted(), cryptoUtil));
+    }
+
     public static CardDto fromEntity(Card c, String masked) {
         CardDto d = new CardDto();
         d.setId(c.getId());
@@ -41,4 +51,25 @@ public class CardDto {
         d.setBalance(c.getBalance());
         return d;
     }
+
+    public static CardDto fromRow(CardRow r, CryptoUtil cryptoUtil) {
+        CardDto d = new CardDto();
+        d.setId(r.id());
+        d.setMaskedNumber(masked(r.panLast4(), r.cardNumberCipher(), r.cardNumberEncrypted(), cryptoUtil));
+        d.setOwnerName(r.ownerName());
+        d.setExpiryMonth(r.expiryMonth());
+        d.setExpiryYear(r.expiryYear());
+        d.setStatus(r.status());
+        d.setBalance(r.balance());
+        return d;
+    }
+
+    // Расшифровка нужна только для строк, которые CardPanBackfillJob ещё не заполнил
+    private static String masked(String panLast4, byte[] cipher, String encrypted, CryptoUtil cryptoUtil) {
+        if (panLast4 != null) {
+            return CryptoUtil.maskLastFour(panLast4);
+        }
+        String decrypted = cipher != null ? cryptoUtil.decryptFromBytes(cipher) : cryptoUtil.decrypt(encrypted);
+        return CryptoUtil.maskCardNumber(decrypted);
+    }
 }
@@ -0,0 +1,14 @@
+package com.denos.bankcards.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+@Data
+@Schema(description = "Запрос на поиск карты по номеру")
+public class CardLookupRequest {
+
+    @Schema(
+            description = "Номер карты", example = "4111111111111111"
+    )
+    private String cardNumber;
+}
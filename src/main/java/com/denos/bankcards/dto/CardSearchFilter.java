@@ -0,0 +1,26 @@
+package com.denos.bankcards.dto;
+
+import com.denos.bankcards.enums.CardStatus;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.time.YearMonth;
+
+@Data
+@Schema(description = "Фильтры поиска карт, все необязательны")
+public class CardSearchFilter {
+    @Schema(description = "Статус карты", example = "ACTIVE")
+    private CardStatus status;
+
+    @Schema(description = "Срок действия не раньше месяца", example = "2025-01")
+    private YearMonth expiresFrom;
+
+    @Schema(description = "Срок действия не позже месяца", example = "2025-12")
+    private YearMonth expiresTo;
+
+    @Schema(description = "Начало имени владельца, без учёта регистра", example = "IVAN")
+    private String ownerPrefix;
+
+    @Schema(description = "ID пользователя", example = "1")
+    private Long userId;
+}
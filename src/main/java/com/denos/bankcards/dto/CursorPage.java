@@ -0,0 +1,59 @@
+package com.denos.bankcards.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Страница выборки по ключу: следующая страница запрашивается с nextCursor, а не со смещением,
+ * поэтому дальние страницы стоят столько же, сколько первая. Курсор непрозрачен для клиента.
+ */
+@Data
+@Schema(description = "Страница с курсором на следующую")
+public class CursorPage<T> {
+    public static final int MAX_LIMIT = 500;
+
+    @Schema(description = "Элементы страницы")
+    private List<T> items;
+
+    @Schema(description = "Курсор следующей страницы, отсутствует на последней", example = "MTAw")
+    private String nextCursor;
+
+    /**
+     * Собирает страницу из выборки на limit + 1 строк: лишняя строка только сообщает, что есть продолжение.
+     */
+    public static <E, T> CursorPage<T> of(List<E> rows, int limit, ToLongFunction<E> key, Function<E, T> mapper) {
+        boolean hasMore = rows.size() > limit;
+        List<E> page = hasMore ? rows.subList(0, limit) : rows;
+        CursorPage<T> p = new CursorPage<>();
+        p.setItems(page.stream().map(mapper).toList());
+        p.setNextCursor(hasMore ? encodeCursor(key.applyAsLong(page.get(page.size() - 1))) : null);
+        return p;
+    }
+
+    public static void checkLimit(int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("limit должен быть от 1 до " + MAX_LIMIT);
+        }
+    }
+
+    public static String encodeCursor(long lastId) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Long.toString(lastId).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    public static long decodeCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Некорректный курсор");
+        }
+    }
+}
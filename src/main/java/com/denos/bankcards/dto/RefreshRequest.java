@@ -0,0 +1,11 @@
+package com.denos.bankcards.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+@Data
+@Schema(description = "Запрос обновления токенов")
+public class RefreshRequest {
+    @Schema(description = "Refresh-токен из ответа на вход или предыдущее обновление")
+    private String refreshToken;
+}
@@ -0,0 +1,40 @@
+package com.denos.bankcards.dto;
+
+import com.denos.bankcards.enums.TransferItemStatus;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+@Data
+@Schema(description = "Результат одного перевода из пакета")
+public class TransferItemResult {
+    @Schema(description = "Позиция перевода в запросе", example = "0")
+    private int index;
+
+    @Schema(description = "ID карты отправителя", example = "1")
+    private Long fromCardId;
+
+    @Schema(description = "ID карты получателя", example = "2")
+    private Long toCardId;
+
+    @Schema(description = "Сумма перевода", example = "100.00")
+    private BigDecimal amount;
+
+    @Schema(description = "Статус перевода", example = "APPLIED")
+    private TransferItemStatus status;
+
+    @Schema(description = "Причина отказа", example = "Недостаточно средств")
+    private String message;
+
+    public static TransferItemResult of(int index, TransferRequest req, TransferItemStatus status, String message) {
+        TransferItemResult r = new TransferItemResult();
+        r.setIndex(index);
+        r.setFromCardId(req.getFromCardId());
+        r.setToCardId(req.getToCardId());
+        r.setAmount(req.getAmount());
+        r.setStatus(status);
+        r.setMessage(message);
+        return r;
+    }
+}
@@ -1,10 +1,18 @@
 package com.denos.bankcards.dto;
 
+import com.denos.bankcards.entity.Role;
 import com.denos.bankcards.entity.User;
+import com.denos.bankcards.enums.RoleType;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Data
+@NoArgsConstructor
 @Schema(description = "Данные пользователя")
 public class UserDto {
     @Schema(description = "ID пользователя", example = "1")
@@ -25,6 +33,19 @@ public class UserDto {
     @Schema(description = "Активен ли пользователь", example = "true")
     private boolean enabled;
 
+    @Schema(description = "Роли пользователя", example = "[\"ROLE_USER\"]")
+    private Set<RoleType> roles;
+
+    // Для JPQL-проекций: роли заполняются отдельным запросом
+    public UserDto(Long id, String username, String firstName, String lastName, String middleName, boolean enabled) {
+        this.id = id;
+        this.username = username;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.middleName = middleName;
+        this.enabled = enabled;
+    }
+
     public static UserDto fromEntity(User u) {
         UserDto dto = new UserDto();
         dto.setId(u.getId());
@@ -33,6 +54,9 @@ public class UserDto {
         dto.setLastName(u.getLastName());
         dto.setMiddleName(u.getMiddleName());
         dto.setEnabled(u.isEnabled());
+        dto.setRoles(u.getUserRoles() == null ? Set.of() : u.getUserRoles().stream()
+                .map(Role::getRoleName)
+                .collect(Collectors.toCollection(() -> EnumSet.noneOf(RoleType.class))));
         return dto;
     }
 }
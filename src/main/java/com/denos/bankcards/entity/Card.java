@@ -19,9 +19,19 @@ public class Card {
     @Column(name = "card_id", nullable = false)
     private Long id;
 
-    @Column(name = "card_number_encrypted", nullable = false, columnDefinition = "text")
+    // Base64 прежнего формата, остаётся только у строк, которые ещё не перенёс CardCipherMigrationJob
+    @Column(name = "card_number_encrypted", columnDefinition = "text")
     private String cardNumberEncrypted;
 
+    @Column(name = "card_number_cipher")
+    private byte[] cardNumberCipher;
+
+    @Column(name = "pan_last4", length = 4)
+    private String panLast4;
+
+    @Column(name = "pan_fingerprint")
+    private byte[] panFingerprint;
+
     @Column(name = "owner_name", nullable = false)
     private String ownerName;
 
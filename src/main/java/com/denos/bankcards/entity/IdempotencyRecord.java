@@ -0,0 +1,43 @@
+package com.denos.bankcards.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.Immutable;
+import org.springframework.data.domain.Persistable;
+
+import java.time.Instant;
+
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+@Immutable
+@Table(name = "idempotency_keys")
+public class IdempotencyRecord implements Persistable<IdempotencyKey> {
+    @EmbeddedId
+    private IdempotencyKey id;
+
+    @Column(name = "request_hash", nullable = false)
+    private String requestHash;
+
+    @Column(name = "response", nullable = false, columnDefinition = "text")
+    private String response;
+
+    // true - сохранён отказ, response содержит текст ошибки
+    @Column(name = "failed", nullable = false)
+    private boolean failed;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+
+    // Записи только добавляются: save() делает INSERT без предварительного SELECT,
+    // а повтор ключа ловится первичным ключом
+    @Override
+    public boolean isNew() {
+        return true;
+    }
+}
@@ -0,0 +1,45 @@
+package com.denos.bankcards.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.springframework.data.domain.Persistable;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+@Table(name = "refresh_tokens")
+public class RefreshToken implements Persistable<String> {
+    // HMAC-SHA256 токена в hex, сам токен не хранится
+    @Id
+    @Column(name = "token_hash", nullable = false, length = 64)
+    private String tokenHash;
+
+    @Column(name = "family_id", nullable = false)
+    private UUID familyId;
+
+    @Column(name = "username", nullable = false, length = 100)
+    private String username;
+
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+
+    @Setter
+    @Column(name = "used_at")
+    private Instant usedAt;
+
+    @Override
+    public String getId() {
+        return tokenHash;
+    }
+
+    // Новые токены только добавляются: save() делает INSERT без предварительного SELECT
+    @Override
+    public boolean isNew() {
+        return true;
+    }
+}
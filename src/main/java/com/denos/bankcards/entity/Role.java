@@ -1,8 +1,12 @@
 package com.denos.bankcards.entity;
 
+import com.denos.bankcards.config.SecondLevelCacheConfig;
 import com.denos.bankcards.enums.RoleType;
 import jakarta.persistence.*;
+import jakarta.persistence.Cacheable;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 @Getter
 @Setter
@@ -11,6 +15,9 @@ import lombok.*;
 @Builder
 @Entity
 @Table(name = "roles")
+@Cacheable
+// Справочник меняется только миграциями
+@Cache(usage = CacheConcurrencyStrategy.READ_ONLY, region = SecondLevelCacheConfig.ROLES)
 public class Role {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -0,0 +1,40 @@
+package com.denos.bankcards.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.Immutable;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+@Immutable
+@Table(name = "transfers")
+public class Transfer {
+    // Последовательность вместо IDENTITY, иначе Hibernate не может группировать INSERT в JDBC-батчи
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transfers_seq")
+    @SequenceGenerator(name = "transfers_seq", sequenceName = "transfers_seq", allocationSize = 50)
+    @Column(name = "transfer_id", nullable = false)
+    private Long id;
+
+    @Column(name = "from_card_id", nullable = false)
+    private Long fromCardId;
+
+    @Column(name = "to_card_id", nullable = false)
+    private Long toCardId;
+
+    @Column(name = "amount", nullable = false, precision = 19, scale = 2)
+    private BigDecimal amount;
+
+    @Column(name = "initiated_by", nullable = false)
+    private String initiatedBy;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+}
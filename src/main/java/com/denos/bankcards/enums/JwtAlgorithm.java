@@ -0,0 +1,5 @@
+package com.denos.bankcards.enums;
+
+public enum JwtAlgorithm {
+    HS256, ES256
+}
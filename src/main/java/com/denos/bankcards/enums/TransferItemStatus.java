@@ -0,0 +1,5 @@
+package com.denos.bankcards.enums;
+
+public enum TransferItemStatus {
+    APPLIED, REJECTED, ROLLED_BACK
+}
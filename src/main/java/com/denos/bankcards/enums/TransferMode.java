@@ -0,0 +1,5 @@
+package com.denos.bankcards.enums;
+
+public enum TransferMode {
+    ENTITY, CONDITIONAL_UPDATE
+}
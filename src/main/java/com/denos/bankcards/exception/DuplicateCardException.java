@@ -0,0 +1,7 @@
+package com.denos.bankcards.exception;
+
+public class DuplicateCardException extends RuntimeException {
+    public DuplicateCardException(String message) {
+        super(message);
+    }
+}
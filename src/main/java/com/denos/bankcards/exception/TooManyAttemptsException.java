@@ -0,0 +1,7 @@
+package com.denos.bankcards.exception;
+
+public class TooManyAttemptsException extends RuntimeException {
+    public TooManyAttemptsException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,10 @@
+package com.denos.bankcards.exception;
+
+/**
+ * Отказ в переводе из-за состояния карт (статус, остаток). Повтор с тем же Idempotency-Key получает этот же отказ.
+ */
+public class TransferRejectedException extends IllegalStateException {
+    public TransferRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,98 @@
+package com.denos.bankcards.job;
+
+import com.denos.bankcards.util.CryptoUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Переносит номера карт из Base64-колонки card_number_encrypted в бинарную card_number_cipher
+ * (миграция 007). Шифртекст не расшифровывается — меняется только упаковка. Каждая порция — отдельный
+ * batch UPDATE, который обнуляет старую колонку, поэтому после перезапуска задача продолжает
+ * с оставшихся строк.
+ */
+@Slf4j
+@Component
+public class CardCipherMigrationJob {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int chunkSize;
+    private final CompletableFuture<Void> startupRun = new CompletableFuture<>();
+
+    public CardCipherMigrationJob(JdbcTemplate jdbcTemplate,
+                                  @Value("${bank.backfill.card-cipher.enabled}") boolean enabled,
+                                  @Value("${bank.backfill.card-cipher.chunk-size}") int chunkSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.chunkSize = chunkSize;
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        try {
+            if (enabled) {
+                run();
+            }
+        } finally {
+            startupRun.complete(null);
+        }
+    }
+
+    /**
+     * Завершается, когда закончен перенос при старте (или сразу, если он выключен). CardKeyRotationJob ждёт его:
+     * перенесённые позже строки остались бы на прежнем ключе.
+     */
+    public CompletableFuture<Void> startupRun() {
+        return startupRun;
+    }
+
+    public int run() {
+        long lastId = 0;
+        int migrated = 0;
+        while (true) {
+            List<LegacyCard> chunk = jdbcTemplate.query(
+                    "select card_id, card_number_encrypted from cards " +
+                            "where card_id > ? and card_number_encrypted is not null order by card_id limit ?",
+                    (rs, i) -> new LegacyCard(rs.getLong("card_id"), rs.getString("card_number_encrypted")),
+                    lastId, chunkSize);
+            if (chunk.isEmpty()) {
+                break;
+            }
+
+            List<Object[]> args = new ArrayList<>(chunk.size());
+            for (LegacyCard card : chunk) {
+                try {
+                    args.add(new Object[]{CryptoUtil.toEnvelope(card.encrypted()), card.id(), card.encrypted()});
+                } catch (IllegalArgumentException ex) {
+                    log.warn("Некорректный шифртекст карты {}, перенос пропущен", card.id(), ex);
+                }
+            }
+            // Условие на старое значение защищает от перезаписи, если строку успели изменить
+            int[] counts = jdbcTemplate.batchUpdate("update cards set card_number_cipher = ?, card_number_encrypted = null " +
+                    "where card_id = ? and card_number_encrypted = ?", args);
+
+            // Считаются только строки, которые перенёс этот запуск: 0 — строку уже перенёс другой узел или запрос
+            for (int count : counts) {
+                migrated += count == Statement.SUCCESS_NO_INFO ? 1 : count;
+            }
+            lastId = chunk.get(chunk.size() - 1).id();
+        }
+        if (migrated > 0) {
+            log.info("Номера {} карт перенесены в card_number_cipher", migrated);
+        }
+        return migrated;
+    }
+
+    private record LegacyCard(long id, String encrypted) {}
+}
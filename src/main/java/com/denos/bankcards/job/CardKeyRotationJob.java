@@ -0,0 +1,223 @@
+package com.denos.bankcards.job;
+
+import com.denos.bankcards.util.CryptoUtil;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Перешифровывает номера карт активным ключом из security.card-keys. Идёт по card_id порциями,
+ * порция шифруется параллельно на ограниченном пуле и фиксируется отдельной транзакцией вместе
+ * с контрольной точкой в job_checkpoints, поэтому после перезапуска задача продолжает с места остановки.
+ * Скорость ограничена bank.key-rotation.rows-per-second, чтобы не отнимать ресурсы у переводов.
+ * Ротация считается завершённой (completed_at), только если на прежних ключах не осталось ни одной строки.
+ */
+@Slf4j
+@Component
+public class CardKeyRotationJob {
+
+    static final String JOB_NAME = "card-key-rotation";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final CryptoUtil cryptoUtil;
+    private final CardCipherMigrationJob cipherMigrationJob;
+    private final boolean enabled;
+    private final int chunkSize;
+    private final int parallelism;
+    private final int rowsPerSecond;
+    private final ExecutorService pool;
+
+    public CardKeyRotationJob(JdbcTemplate jdbcTemplate,
+                              PlatformTransactionManager transactionManager,
+                              CryptoUtil cryptoUtil,
+                              CardCipherMigrationJob cipherMigrationJob,
+                              @Value("${bank.key-rotation.enabled}") boolean enabled,
+                              @Value("${bank.key-rotation.chunk-size}") int chunkSize,
+                              @Value("${bank.key-rotation.parallelism}") int parallelism,
+                              @Value("${bank.key-rotation.rows-per-second}") int rowsPerSecond) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.cryptoUtil = cryptoUtil;
+        this.cipherMigrationJob = cipherMigrationJob;
+        this.enabled = enabled;
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+        this.rowsPerSecond = rowsPerSecond;
+        this.pool = Executors.newFixedThreadPool(parallelism);
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        if (enabled) {
+            // Перенос из card_number_encrypted пишет конверты прежним ключом, поэтому ротация идёт после него
+            cipherMigrationJob.startupRun().join();
+            run();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    public int run() {
+        int targetKeyId = cryptoUtil.getActiveKeyId();
+        Checkpoint checkpoint = loadCheckpoint(targetKeyId);
+        if (checkpoint.completed()) {
+            return 0;
+        }
+
+        long lastId = checkpoint.lastCardId();
+        long rowsDone = checkpoint.rowsDone();
+        int rotated = 0;
+        long scanned = 0;
+        long startedAt = System.nanoTime();
+        try {
+            while (true) {
+                List<StoredCard> chunk = jdbcTemplate.query(
+                        "select card_id, card_number_cipher, card_number_encrypted from cards " +
+                                "where card_id > ? " +
+                                "and (card_number_encrypted is not null or get_byte(card_number_cipher, 1) <> ?) " +
+                                "order by card_id limit ?",
+                        (rs, i) -> new StoredCard(rs.getLong("card_id"),
+                                rs.getBytes("card_number_cipher"), rs.getString("card_number_encrypted")),
+                        lastId, targetKeyId, chunkSize);
+                if (chunk.isEmpty()) {
+                    break;
+                }
+
+                List<Object[]> args = reencrypt(chunk);
+                long chunkLastId = chunk.get(chunk.size() - 1).id();
+                long chunkRowsDone = rowsDone + args.size();
+                // Условие на прежнее значение защищает от перезаписи, если строку успели изменить
+                transactionTemplate.executeWithoutResult(status -> {
+                    jdbcTemplate.batchUpdate("update cards set card_number_cipher = ?, card_number_encrypted = null " +
+                            "where card_id = ? and (card_number_cipher = ? or card_number_encrypted = ?)", args);
+                    saveCheckpoint(targetKeyId, chunkLastId, chunkRowsDone, false);
+                });
+
+                rotated += args.size();
+                rowsDone = chunkRowsDone;
+                lastId = chunkLastId;
+                scanned += chunk.size();
+                throttle(scanned, startedAt);
+            }
+            long remaining = remainingOnOtherKeys(targetKeyId);
+            if (remaining == 0) {
+                saveCheckpoint(targetKeyId, lastId, rowsDone, true);
+            } else {
+                // Без completed_at прежний ключ удалять нельзя; следующий запуск пройдёт таблицу с начала
+                log.error("После перешифрования ключом {} на прежних ключах осталось {} карт, ротация не завершена",
+                        targetKeyId, remaining);
+                saveCheckpoint(targetKeyId, 0, rowsDone, false);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.info("Перешифрование остановлено на карте {}, продолжится после перезапуска", lastId);
+        }
+        if (rotated > 0) {
+            log.info("Номера {} карт перешифрованы ключом {}", rotated, targetKeyId);
+        }
+        return rotated;
+    }
+
+    // Порция делится на части по числу потоков пула, результат собирается в исходном порядке card_id
+    private List<Object[]> reencrypt(List<StoredCard> chunk) throws InterruptedException {
+        int sliceSize = (chunk.size() + parallelism - 1) / parallelism;
+        List<Future<List<Object[]>>> futures = new ArrayList<>();
+        for (int from = 0; from < chunk.size(); from += sliceSize) {
+            List<StoredCard> slice = chunk.subList(from, Math.min(from + sliceSize, chunk.size()));
+            futures.add(pool.submit(() -> reencryptSlice(slice)));
+        }
+
+        List<Object[]> args = new ArrayList<>(chunk.size());
+        for (Future<List<Object[]>> future : futures) {
+            try {
+                args.addAll(future.get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Ошибка перешифрования", e.getCause());
+            }
+        }
+        return args;
+    }
+
+    private List<Object[]> reencryptSlice(List<StoredCard> slice) {
+        List<Object[]> args = new ArrayList<>(slice.size());
+        for (StoredCard card : slice) {
+            try {
+                byte[] rotated = card.cipher() != null
+                        ? cryptoUtil.reencrypt(card.cipher())
+                        : cryptoUtil.encryptToBytes(cryptoUtil.decrypt(card.encrypted()));
+                args.add(new Object[]{rotated, card.id(), card.cipher(), card.encrypted()});
+            } catch (RuntimeException ex) {
+                log.warn("Не удалось перешифровать номер карты {}", card.id(), ex);
+            }
+        }
+        return args;
+    }
+
+    private void throttle(long scanned, long startedAt) throws InterruptedException {
+        if (rowsPerSecond <= 0) {
+            return;
+        }
+        long expectedNanos = TimeUnit.SECONDS.toNanos(scanned) / rowsPerSecond;
+        long aheadNanos = expectedNanos - (System.nanoTime() - startedAt);
+        if (aheadNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(aheadNanos);
+        }
+    }
+
+    // Строки, пропущенные из-за ошибки шифрования или изменённые между чтением и UPDATE
+    private long remainingOnOtherKeys(int targetKeyId) {
+        Long count = jdbcTemplate.queryForObject(
+                "select count(*) from cards " +
+                        "where card_number_encrypted is not null or get_byte(card_number_cipher, 1) <> ?",
+                Long.class, targetKeyId);
+        return count == null ? 0 : count;
+    }
+
+    // Контрольная точка для другого ключа означает новую ротацию: начинаем с начала таблицы
+    private Checkpoint loadCheckpoint(int targetKeyId) {
+        List<Checkpoint> rows = jdbcTemplate.query(
+                "select last_card_id, rows_done, completed_at from job_checkpoints " +
+                        "where job_name = ? and target_key_id = ?",
+                (rs, i) -> new Checkpoint(rs.getLong("last_card_id"), rs.getLong("rows_done"),
+                        rs.getTimestamp("completed_at") != null),
+                JOB_NAME, targetKeyId);
+        return rows.isEmpty() ? new Checkpoint(0, 0, false) : rows.get(0);
+    }
+
+    private void saveCheckpoint(int targetKeyId, long lastCardId, long rowsDone, boolean completed) {
+        Timestamp now = Timestamp.from(Instant.now());
+        jdbcTemplate.update("insert into job_checkpoints " +
+                        "(job_name, target_key_id, last_card_id, rows_done, updated_at, completed_at) " +
+                        "values (?, ?, ?, ?, ?, ?) " +
+                        "on conflict (job_name) do update set target_key_id = excluded.target_key_id, " +
+                        "last_card_id = excluded.last_card_id, rows_done = excluded.rows_done, " +
+                        "updated_at = excluded.updated_at, completed_at = excluded.completed_at",
+                JOB_NAME, targetKeyId, lastCardId, rowsDone, now, completed ? now : null);
+    }
+
+    private record StoredCard(long id, byte[] cipher, String encrypted) {}
+
+    private record Checkpoint(long lastCardId, long rowsDone, boolean completed) {}
+}
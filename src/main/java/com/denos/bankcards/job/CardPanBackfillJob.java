@@ -0,0 +1,101 @@
+package com.denos.bankcards.job;
+
+import com.denos.bankcards.util.CryptoUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Заполняет cards.pan_last4 и cards.pan_fingerprint для карт, созданных до миграций 006 и 009.
+ * Идёт по card_id порциями, каждая порция — отдельный batch UPDATE, поэтому после перезапуска задача
+ * просто продолжает с оставшихся незаполненных строк. Карта, номер которой совпадает с другой картой,
+ * получает только pan_last4 и отметку pan_conflict: отпечаток ей не записать из-за уникального индекса,
+ * а повторно она не расшифровывается.
+ */
+@Slf4j
+@Component
+public class CardPanBackfillJob {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CryptoUtil cryptoUtil;
+    private final boolean enabled;
+    private final int chunkSize;
+
+    public CardPanBackfillJob(JdbcTemplate jdbcTemplate,
+                              CryptoUtil cryptoUtil,
+                              @Value("${bank.backfill.pan.enabled}") boolean enabled,
+                              @Value("${bank.backfill.pan.chunk-size}") int chunkSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.cryptoUtil = cryptoUtil;
+        this.enabled = enabled;
+        this.chunkSize = chunkSize;
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        if (enabled) {
+            run();
+        }
+    }
+
+    public int run() {
+        long lastId = 0;
+        int updated = 0;
+        while (true) {
+            List<PendingCard> chunk = jdbcTemplate.query(
+                    "select card_id, card_number_cipher, card_number_encrypted from cards " +
+                            "where card_id > ? and (pan_last4 is null or pan_fingerprint is null) and not pan_conflict " +
+                            "order by card_id limit ?",
+                    (rs, i) -> new PendingCard(rs.getLong("card_id"),
+                            rs.getBytes("card_number_cipher"), rs.getString("card_number_encrypted")),
+                    lastId, chunkSize);
+            if (chunk.isEmpty()) {
+                break;
+            }
+
+            List<Object[]> args = new ArrayList<>(chunk.size());
+            for (PendingCard card : chunk) {
+                try {
+                    String decrypted = card.cipher() != null
+                            ? cryptoUtil.decryptFromBytes(card.cipher())
+                            : cryptoUtil.decrypt(card.encrypted());
+                    byte[] fingerprint = cryptoUtil.fingerprint(decrypted);
+                    args.add(new Object[]{CryptoUtil.lastFour(decrypted), fingerprint, card.id(), fingerprint});
+                } catch (RuntimeException ex) {
+                    log.warn("Не удалось расшифровать номер карты {}, pan_last4 не заполнен", card.id(), ex);
+                }
+            }
+            // Дубликат номера не заполняется, чтобы не нарушить уникальный индекс и не сорвать всю порцию
+            int[] counts = jdbcTemplate.batchUpdate("update cards set pan_last4 = ?, pan_fingerprint = ? " +
+                    "where card_id = ? and not exists " +
+                    "(select 1 from cards d where d.pan_fingerprint = ? and d.card_id <> cards.card_id)", args);
+
+            List<Object[]> conflicts = new ArrayList<>();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) {
+                    log.warn("Номер карты {} совпадает с другой картой, pan_fingerprint не заполнен, карта помечена pan_conflict",
+                            args.get(i)[2]);
+                    conflicts.add(new Object[]{args.get(i)[0], args.get(i)[2]});
+                } else {
+                    updated++;
+                }
+            }
+            jdbcTemplate.batchUpdate("update cards set pan_last4 = ?, pan_conflict = true where card_id = ?", conflicts);
+            lastId = chunk.get(chunk.size() - 1).id();
+        }
+        if (updated > 0) {
+            log.info("pan_last4 и pan_fingerprint заполнены для {} карт", updated);
+        }
+        return updated;
+    }
+
+    private record PendingCard(long id, byte[] cipher, String encrypted) {}
+}
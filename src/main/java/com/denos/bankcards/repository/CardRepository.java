@@ -2,10 +2,128 @@ package com.denos.bankcards.repository;
 
 import com.denos.bankcards.entity.Card;
 import com.denos.bankcards.entity.User;
+import com.denos.bankcards.enums.CardStatus;
+import com.denos.bankcards.repository.projection.CardNumberView;
+import com.denos.bankcards.repository.projection.CardRow;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
+
+public interface CardRepository extends JpaRepository<Card, Long>, JpaSpecificationExecutor<Card> {
+    int EXPORT_FETCH_SIZE = 500;
+
+    // Владелец проверяется подзапросом по уникальному username: без join, FOR UPDATE блокирует только строки cards
+    String OWNED_BY = "c.user.id = (select u.id from User u where u.username = :username)";
+
+    String CARD_ROW = "select new com.denos.bankcards.repository.projection.CardRow(c.id, c.panLast4, " +
+            "c.cardNumberCipher, c.cardNumberEncrypted, c.ownerName, c.expiryMonth, c.expiryYear, c.status, c.balance) " +
+            "from Card c ";
 
-public interface CardRepository extends JpaRepository<Card, Long> {
     Page<Card> findByUser(User user, Pageable pageable);
-}
\ No newline at end of file
+
+    /**
+     * Карты пользователя по username одним запросом, без загрузки самого пользователя.
+     */
+    @Query(value = CARD_ROW + "where c.user.username = :username",
+            countQuery = "select count(c) from Card c where c.user.username = :username")
+    Page<CardRow> findRowsByUsername(@Param("username") String username, Pageable pageable);
+
+    /**
+     * Карты с card_id больше afterId по возрастанию card_id. Фильтры необязательны: null — без фильтра.
+     */
+    @Query(CARD_ROW + "where c.id > :afterId " +
+            "and (:status is null or c.status = :status) " +
+            "and (:userId is null or c.user.id = :userId) " +
+            "order by c.id")
+    List<CardRow> findRowsAfter(@Param("afterId") long afterId,
+                                @Param("status") CardStatus status,
+                                @Param("userId") Long userId,
+                                Limit limit);
+
+    /**
+     * Все карты по возрастанию card_id для выгрузки. Строки читаются с курсора порциями по EXPORT_FETCH_SIZE
+     * и без снимков для dirty checking; вызывать внутри транзакции и закрывать поток.
+     */
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "" + EXPORT_FETCH_SIZE),
+            @QueryHint(name = HINT_READ_ONLY, value = "true")
+    })
+    @Query("select c from Card c order by c.id")
+    Stream<Card> streamAllOrderById();
+
+    /**
+     * Загружает и блокирует карту, только если она принадлежит пользователю. Пустой результат означает,
+     * что карты нет или она чужая, различать это нужно только на пути отказа.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select c from Card c where c.id = :id and " + OWNED_BY)
+    Optional<Card> findOwnedByIdForUpdate(@Param("id") Long id, @Param("username") String username);
+
+    /**
+     * Загружает и блокирует карты пользователя одним запросом. PostgreSQL накладывает FOR UPDATE
+     * после сортировки, поэтому строки блокируются по возрастанию card_id.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select c from Card c where c.id in :ids and " + OWNED_BY + " order by c.id")
+    List<Card> findAllOwnedByIdForUpdate(@Param("ids") Collection<Long> ids, @Param("username") String username);
+
+    @Query("select c.id from Card c where c.id in :ids")
+    Set<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+    boolean existsByIdAndUserUsername(Long id, String username);
+
+    /**
+     * Блокирует карту одним UPDATE, если она принадлежит пользователю. Возвращает число изменённых строк.
+     */
+    @Transactional
+    @Modifying
+    @Query("update Card c set c.status = com.denos.bankcards.enums.CardStatus.BLOCKED where c.id = :id and " + OWNED_BY)
+    int blockIfOwned(@Param("id") Long id, @Param("username") String username);
+
+    @Transactional
+    @Modifying
+    @Query("update Card c set c.status = com.denos.bankcards.enums.CardStatus.BLOCKED where c.id = :id")
+    int block(@Param("id") Long id);
+
+    List<CardNumberView> findByIdIn(Collection<Long> ids);
+
+    Optional<Card> findByPanFingerprint(byte[] panFingerprint);
+
+    /**
+     * Списывает сумму одним UPDATE, если карта активна, принадлежит пользователю и на ней хватает средств.
+     * Возвращает число изменённых строк: 0 означает, что перевод с этой карты невозможен.
+     */
+    @Modifying
+    @Query("update Card c set c.balance = c.balance - :amount " +
+            "where c.id = :id and c.balance >= :amount " +
+            "and c.status = com.denos.bankcards.enums.CardStatus.ACTIVE " +
+            "and " + OWNED_BY)
+    int debitIfAvailable(@Param("id") Long id, @Param("username") String username, @Param("amount") BigDecimal amount);
+
+    @Modifying
+    @Query("update Card c set c.balance = c.balance + :amount " +
+            "where c.id = :id " +
+            "and c.status = com.denos.bankcards.enums.CardStatus.ACTIVE " +
+            "and " + OWNED_BY)
+    int creditIfActive(@Param("id") Long id, @Param("username") String username, @Param("amount") BigDecimal amount);
+}
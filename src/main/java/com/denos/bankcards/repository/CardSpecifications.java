@@ -0,0 +1,67 @@
+package com.denos.bankcards.repository;
+
+import com.denos.bankcards.dto.CardSearchFilter;
+import com.denos.bankcards.entity.Card;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Условия поиска карт. Каждое условие записано так, чтобы его покрывал индекс из 012-add-card-search-indexes:
+ * срок действия сравнивается парой (год, месяц), имя владельца — префиксом upper(owner_name).
+ */
+public final class CardSpecifications {
+
+    private CardSpecifications() {
+    }
+
+    public static Specification<Card> matching(CardSearchFilter filter, long afterId) {
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            predicates.add(cb.greaterThan(root.get("id"), afterId));
+            if (filter.getStatus() != null) {
+                predicates.add(cb.equal(root.get("status"), filter.getStatus()));
+            }
+            if (filter.getUserId() != null) {
+                predicates.add(cb.equal(root.get("user").get("id"), filter.getUserId()));
+            }
+            if (filter.getExpiresFrom() != null) {
+                predicates.add(expiresNotBefore(root, cb, filter.getExpiresFrom()));
+            }
+            if (filter.getExpiresTo() != null) {
+                predicates.add(expiresNotAfter(root, cb, filter.getExpiresTo()));
+            }
+            if (filter.getOwnerPrefix() != null && !filter.getOwnerPrefix().isBlank()) {
+                String pattern = escapeLike(filter.getOwnerPrefix().strip().toUpperCase(Locale.ROOT)) + "%";
+                predicates.add(cb.like(cb.upper(root.get("ownerName")), pattern, '\\'));
+            }
+            return cb.and(predicates.toArray(Predicate[]::new));
+        };
+    }
+
+    // (year, month) >= (from.year, from.month)
+    private static Predicate expiresNotBefore(Root<Card> root, CriteriaBuilder cb, YearMonth from) {
+        return cb.or(
+                cb.greaterThan(root.get("expiryYear"), from.getYear()),
+                cb.and(cb.equal(root.get("expiryYear"), from.getYear()),
+                        cb.greaterThanOrEqualTo(root.get("expiryMonth"), from.getMonthValue())));
+    }
+
+    // (year, month) <= (to.year, to.month)
+    private static Predicate expiresNotAfter(Root<Card> root, CriteriaBuilder cb, YearMonth to) {
+        return cb.or(
+                cb.lessThan(root.get("expiryYear"), to.getYear()),
+                cb.and(cb.equal(root.get("expiryYear"), to.getYear()),
+                        cb.lessThanOrEqualTo(root.get("expiryMonth"), to.getMonthValue())));
+    }
+
+    static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -0,0 +1,36 @@
+package com.denos.bankcards.repository;
+
+import com.denos.bankcards.entity.IdempotencyKey;
+import com.denos.bankcards.entity.IdempotencyRecord;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.hibernate.jpa.HibernateHints.HINT_NATIVE_SPACES;
+
+// Нативные DELETE объявляют затронутую таблицу, иначе Hibernate сбрасывает весь кэш второго уровня
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, IdempotencyKey> {
+
+    // Транзакция на запись вместо readOnly по умолчанию: ключ ищется в основной БД, а не на отставшей реплике
+    @Override
+    @Transactional
+    Optional<IdempotencyRecord> findById(IdempotencyKey id);
+
+    @Transactional
+    @QueryHints(@QueryHint(name = HINT_NATIVE_SPACES, value = "idempotency_keys"))
+    @Modifying
+    @Query(value = "delete from idempotency_keys where expires_at < :now", nativeQuery = true)
+    int deleteExpired(@Param("now") Instant now);
+
+    @Transactional
+    @Modifying
+    @Query("delete from IdempotencyRecord r where r.id = :id and r.expiresAt <= :now")
+    int deleteIfExpired(@Param("id") IdempotencyKey id, @Param("now") Instant now);
+}
@@ -0,0 +1,43 @@
+package com.denos.bankcards.repository;
+
+import com.denos.bankcards.entity.RefreshToken;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.hibernate.jpa.HibernateHints.HINT_NATIVE_SPACES;
+
+// Нативные DELETE объявляют затронутую таблицу, иначе Hibernate сбрасывает весь кэш второго уровня
+public interface RefreshTokenRepository extends JpaRepository<RefreshToken, String> {
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select t from RefreshToken t where t.tokenHash = :tokenHash")
+    Optional<RefreshToken> findForUpdate(@Param("tokenHash") String tokenHash);
+
+    @QueryHints(@QueryHint(name = HINT_NATIVE_SPACES, value = "refresh_tokens"))
+    @Modifying
+    @Query(value = "delete from refresh_tokens where family_id = :familyId", nativeQuery = true)
+    int deleteByFamily(@Param("familyId") UUID familyId);
+
+    @Transactional
+    @QueryHints(@QueryHint(name = HINT_NATIVE_SPACES, value = "refresh_tokens"))
+    @Modifying
+    @Query(value = "delete from refresh_tokens where username = :username", nativeQuery = true)
+    int deleteByUsername(@Param("username") String username);
+
+    @Transactional
+    @QueryHints(@QueryHint(name = HINT_NATIVE_SPACES, value = "refresh_tokens"))
+    @Modifying
+    @Query(value = "delete from refresh_tokens where expires_at < :now", nativeQuery = true)
+    int deleteExpired(@Param("now") Instant now);
+}
@@ -0,0 +1,7 @@
+package com.denos.bankcards.repository;
+
+import com.denos.bankcards.entity.Transfer;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface TransferRepository extends JpaRepository<Transfer, Long> {
+}
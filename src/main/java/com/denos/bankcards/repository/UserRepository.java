@@ -1,10 +1,79 @@
 package com.denos.bankcards.repository;
 
+import com.denos.bankcards.config.SecondLevelCacheConfig;
+import com.denos.bankcards.dto.UserDto;
 import com.denos.bankcards.entity.User;
+import com.denos.bankcards.repository.projection.UserRoleRow;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.HibernateHints.HINT_CACHE_REGION;
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
 
 public interface UserRepository extends JpaRepository<User, Long> {
+    int EXPORT_FETCH_SIZE = 500;
+
+    /**
+     * Поиск по username идёт через кэш запросов: результат сбрасывается при любой записи в users
+     * (и user_roles для варианта с ролями), сами строки берутся из регионов users и users.roles.
+     */
+    @QueryHints({
+            @QueryHint(name = HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HINT_CACHE_REGION, value = SecondLevelCacheConfig.USERS_BY_USERNAME)
+    })
     Optional<User> findByUsername(String username);
-}
\ No newline at end of file
+
+    /**
+     * Источник ролей и статуса для аутентификации. Вне транзакции выполняется в транзакции на запись,
+     * то есть в основной БД, а не на реплике (см. ReadReplicaRouting).
+     */
+    @Transactional
+    @QueryHints({
+            @QueryHint(name = HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HINT_CACHE_REGION, value = SecondLevelCacheConfig.USERS_BY_USERNAME)
+    })
+    @EntityGraph(attributePaths = "userRoles")
+    Optional<User> findWithRolesByUsername(String username);
+
+    @EntityGraph(attributePaths = "userRoles")
+    Optional<User> findWithRolesById(Long id);
+
+    @Query("select u.username from User u where u.enabled = false")
+    List<String> findDisabledUsernames();
+
+    String USER_DTO = "select new com.denos.bankcards.dto.UserDto(u.id, u.username, u.firstName, u.lastName, " +
+            "u.middleName, u.enabled) from User u ";
+
+    /**
+     * Пользователи с user_id больше afterId по возрастанию user_id, без ролей.
+     */
+    @Query(USER_DTO + "where u.id > :afterId order by u.id")
+    List<UserDto> findPageAsDto(@Param("afterId") long afterId, Limit limit);
+
+    /**
+     * Роли сразу для набора пользователей одним запросом по user_roles.
+     */
+    @Query("select new com.denos.bankcards.repository.projection.UserRoleRow(u.id, r.roleName) " +
+            "from User u join u.userRoles r where u.id in :ids")
+    List<UserRoleRow> findRolesByUserIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Все пользователи для выгрузки сразу в виде UserDto: сущности и их роли не загружаются,
+     * контекст персистентности не растёт. Вызывать внутри транзакции и закрывать поток.
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "" + EXPORT_FETCH_SIZE))
+    @Query(USER_DTO + "order by u.id")
+    Stream<UserDto> streamAllAsDto();
+}
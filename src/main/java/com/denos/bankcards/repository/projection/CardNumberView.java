@@ -0,0 +1,11 @@
+package com.denos.bankcards.repository.projection;
+
+public interface CardNumberView {
+    Long getId();
+
+    String getCardNumberEncrypted();
+
+    byte[] getCardNumberCipher();
+
+    String getPanLast4();
+}
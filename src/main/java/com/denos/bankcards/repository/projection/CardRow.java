@@ -0,0 +1,21 @@
+package com.denos.bankcards.repository.projection;
+
+import com.denos.bankcards.enums.CardStatus;
+
+import java.math.BigDecimal;
+
+/**
+ * Столбцы карты, из которых собирается CardDto. Читается конструктором в JPQL: сущность не создаётся,
+ * в контекст персистентности и снимки для dirty checking ничего не попадает.
+ * Шифртекст нужен только строкам без pan_last4.
+ */
+public record CardRow(Long id,
+                      String panLast4,
+                      byte[] cardNumberCipher,
+                      String cardNumberEncrypted,
+                      String ownerName,
+                      Integer expiryMonth,
+                      Integer expiryYear,
+                      CardStatus status,
+                      BigDecimal balance) {
+}
@@ -0,0 +1,6 @@
+package com.denos.bankcards.repository.projection;
+
+import com.denos.bankcards.enums.RoleType;
+
+public record UserRoleRow(Long userId, RoleType roleName) {
+}
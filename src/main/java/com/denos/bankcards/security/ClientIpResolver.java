@@ -0,0 +1,59 @@
+package com.denos.bankcards.security;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.web.util.matcher.IpAddressMatcher;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * IP клиента для лимита попыток входа. X-Forwarded-For учитывается, только если соединение пришло от прокси
+ * из security.login-throttle.trusted-proxies: адреса цепочки разбираются справа налево, доверенные прокси
+ * пропускаются, первый недоверенный адрес считается клиентом. Заголовок от остальных источников игнорируется,
+ * иначе клиент подставлял бы в него любой адрес и обходил лимит по IP.
+ */
+@Component
+public class ClientIpResolver {
+
+    private static final String FORWARDED_FOR = "X-Forwarded-For";
+
+    private final List<IpAddressMatcher> trustedProxies;
+
+    public ClientIpResolver(@Value("${security.login-throttle.trusted-proxies}") String trustedProxies) {
+        this.trustedProxies = Arrays.stream(StringUtils.commaDelimitedListToStringArray(trustedProxies))
+                .map(String::trim)
+                .filter(StringUtils::hasText)
+                .map(IpAddressMatcher::new)
+                .toList();
+    }
+
+    public String resolve(HttpServletRequest request) {
+        String remoteAddr = request.getRemoteAddr();
+        String forwarded = request.getHeader(FORWARDED_FOR);
+        if (!isTrusted(remoteAddr) || !StringUtils.hasText(forwarded)) {
+            return remoteAddr;
+        }
+        String[] hops = forwarded.split(",");
+        for (int i = hops.length - 1; i >= 0; i--) {
+            String hop = hops[i].trim();
+            if (!hop.isEmpty() && !isTrusted(hop)) {
+                return hop;
+            }
+        }
+        // Вся цепочка из доверенных прокси: клиентом считается самый левый адрес
+        String first = hops.length == 0 ? "" : hops[0].trim();
+        return first.isEmpty() ? remoteAddr : first;
+    }
+
+    private boolean isTrusted(String address) {
+        try {
+            return trustedProxies.stream().anyMatch(matcher -> matcher.matches(address));
+        } catch (IllegalArgumentException ex) {
+            // Не IP-адрес (например, "unknown") доверенным прокси не бывает
+            return false;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.denos.bankcards.security;
 
+import com.denos.bankcards.enums.PrincipalMode;
+import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.JwtException;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -7,6 +9,8 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -14,16 +18,22 @@ import com.denos.bankcards.service.CustomUserDetailsService;
 
 import java.io.IOException;
 import java.util.List;
-import java.util.stream.Collectors;
 
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtUtil jwtUtil;
     private final CustomUserDetailsService userDetailsService;
+    private final UserSecurityEpochs securityEpochs;
+    private final PrincipalMode principalMode;
 
-    public JwtAuthenticationFilter(JwtUtil jwtUtil, CustomUserDetailsService userDetailsService) {
+    public JwtAuthenticationFilter(JwtUtil jwtUtil,
+                                   CustomUserDetailsService userDetailsService,
+                                   UserSecurityEpochs securityEpochs,
+                                   PrincipalMode principalMode) {
         this.jwtUtil = jwtUtil;
         this.userDetailsService = userDetailsService;
+        this.securityEpochs = securityEpochs;
+        this.principalMode = principalMode;
     }
 
     @Override
@@ -33,9 +43,16 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         String token = parseJwt(request);
         try {
             if (token != null) {
-                var claimsJws = jwtUtil.validateToken(token);
-                String username = claimsJws.getBody().getSubject();
-                var userDetails = userDetailsService.loadUserByUsername(username);
+                Claims claims = jwtUtil.parseClaims(token);
+                String username = claims.getSubject();
+                if (securityEpochs.isRevoked(username, JwtUtil.issuedAtMillis(claims))) {
+                    response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+                    response.getWriter().write("JWT token has been revoked");
+                    return;
+                }
+                var userDetails = principalMode == PrincipalMode.CLAIMS
+                        ? fromClaims(username, claims)
+                        : userDetailsService.loadUserByUsername(username);
 
                 var auth = new UsernamePasswordAuthenticationToken(
                         userDetails, null, userDetails.getAuthorities());
@@ -50,6 +67,15 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
     }
 
+    // Роли берутся из claim "roles", который JwtUtil.generateToken записывает при входе
+    private static UserDetails fromClaims(String username, Claims claims) {
+        List<?> roles = claims.get("roles", List.class);
+        return User.withUsername(username)
+                .password("")
+                .authorities(roles == null ? List.of() : RoleRegistry.authoritiesOfNames(roles))
+                .build();
+    }
+
     private String parseJwt(HttpServletRequest request) {
         String header = request.getHeader("Authorization");
         if (StringUtils.hasText(header) && header.startsWith("Bearer ")) {
@@ -0,0 +1,148 @@
+package com.denos.bankcards.security;
+
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.Signature;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ключ подписи JWT, собирается один раз при старте. HS256 — общий секрет, которым и подписываем, и проверяем;
+ * ES256 — пара ключей P-256: закрытым подписываем, открытый публикуется в JWKS, чтобы другие сервисы
+ * проверяли токены сами, без секрета и без обращения к нам.
+ */
+public final class JwtSigningKey {
+
+    private static final int P256_COORDINATE_BYTES = 32;
+
+    private final SignatureAlgorithm algorithm;
+    private final Key signingKey;
+    private final Key verificationKey;
+    private final String keyId;
+    private final Map<String, Object> jwk;
+
+    private JwtSigningKey(SignatureAlgorithm algorithm, Key signingKey, Key verificationKey,
+                          String keyId, Map<String, Object> jwk) {
+        this.algorithm = algorithm;
+        this.signingKey = signingKey;
+        this.verificationKey = verificationKey;
+        this.keyId = keyId;
+        this.jwk = jwk;
+    }
+
+    public static JwtSigningKey hmac(String secret) {
+        Key key = Keys.hmacShaKeyFor(secret.getBytes());
+        return new JwtSigningKey(SignatureAlgorithm.HS256, key, key, null, null);
+    }
+
+    /**
+     * Ключи в DER (PKCS#8 и X.509) в Base64, допускаются PEM-заголовки и переносы строк.
+     */
+    public static JwtSigningKey es256(String privateKey, String publicKey, String keyId) {
+        if (privateKey == null || privateKey.isBlank() || publicKey == null || publicKey.isBlank()) {
+            throw new IllegalStateException("Для ES256 нужны security.jwt.es256.private-key и public-key");
+        }
+        try {
+            KeyFactory factory = KeyFactory.getInstance("EC");
+            var priv = factory.generatePrivate(new PKCS8EncodedKeySpec(der(privateKey)));
+            var pub = factory.generatePublic(new X509EncodedKeySpec(der(publicKey)));
+            return es256(new KeyPair(pub, priv), keyId);
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            throw new IllegalStateException("Некорректный ключ ES256", e);
+        }
+    }
+
+    public static JwtSigningKey es256(KeyPair keyPair, String keyId) {
+        if (!(keyPair.getPrivate() instanceof ECPrivateKey priv) || !(keyPair.getPublic() instanceof ECPublicKey pub)
+                || pub.getParams().getCurve().getField().getFieldSize() != 256) {
+            throw new IllegalStateException("Для ES256 нужна пара ключей EC на кривой P-256");
+        }
+        assertPair(priv, pub);
+        return new JwtSigningKey(SignatureAlgorithm.ES256, priv, pub, keyId, ecJwk(pub, keyId));
+    }
+
+    public SignatureAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public Key getSigningKey() {
+        return signingKey;
+    }
+
+    public Key getVerificationKey() {
+        return verificationKey;
+    }
+
+    public String getKeyId() {
+        return keyId;
+    }
+
+    /**
+     * Содержимое /.well-known/jwks.json. Для HS256 список пуст: общий секрет не публикуется.
+     */
+    public Map<String, Object> jwks() {
+        return Map.of("keys", jwk == null ? List.of() : List.of(jwk));
+    }
+
+    private static Map<String, Object> ecJwk(ECPublicKey pub, String keyId) {
+        Map<String, Object> jwk = new LinkedHashMap<>();
+        jwk.put("kty", "EC");
+        jwk.put("crv", "P-256");
+        jwk.put("x", coordinate(pub.getW().getAffineX()));
+        jwk.put("y", coordinate(pub.getW().getAffineY()));
+        jwk.put("use", "sig");
+        jwk.put("alg", "ES256");
+        jwk.put("kid", keyId);
+        return Collections.unmodifiableMap(jwk);
+    }
+
+    // Координата в JWK — ровно 32 байта big-endian без знакового байта (RFC 7518, 6.2.1.2)
+    private static String coordinate(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        byte[] fixed = new byte[P256_COORDINATE_BYTES];
+        int length = Math.min(bytes.length, P256_COORDINATE_BYTES);
+        System.arraycopy(bytes, bytes.length - length, fixed, P256_COORDINATE_BYTES - length, length);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(fixed);
+    }
+
+    // Перепутанные ключи из разных пар иначе обнаружатся только на стороне проверяющего сервиса
+    private static void assertPair(ECPrivateKey priv, ECPublicKey pub) {
+        try {
+            byte[] probe = "jwt-key-pair-check".getBytes();
+            Signature signer = Signature.getInstance("SHA256withECDSA");
+            signer.initSign(priv);
+            signer.update(probe);
+            byte[] signature = signer.sign();
+            Signature verifier = Signature.getInstance("SHA256withECDSA");
+            verifier.initVerify(pub);
+            verifier.update(probe);
+            if (!verifier.verify(signature)) {
+                throw new IllegalStateException("Открытый ключ ES256 не соответствует закрытому");
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Некорректный ключ ES256", e);
+        }
+    }
+
+    private static byte[] der(String encoded) {
+        String base64 = Arrays.stream(encoded.split("\\R"))
+                .filter(line -> !line.startsWith("-----"))
+                .reduce("", String::concat)
+                .replaceAll("\\s", "");
+        return Base64.getDecoder().decode(base64);
+    }
+}
@@ -1,50 +1,134 @@
 package com.denos.bankcards.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SignatureAlgorithm;
-import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.security.Key;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class JwtUtil {
 
-    private final Key key;
+    // iat в JWT хранится в секундах; точное время выдачи нужно для отзыва токенов в UserSecurityEpochs
+    public static final String ISSUED_AT_MS = "iat_ms";
+
+    private final JwtSigningKey signingKey;
+    private final JwtParser parser;
     private final long expirationMs;
     private final String issuer;
+    private final Cache<String, Claims> claimsCache;
 
-    public JwtUtil(@Value("${security.jwt.secret}") String secret,
+    public JwtUtil(JwtSigningKey signingKey,
                    @Value("${security.jwt.expiration-ms}") long expirationMs,
-                   @Value("${security.jwt.issuer}") String issuer) {
-        this.key = Keys.hmacShaKeyFor(secret.getBytes());
+                   @Value("${security.jwt.issuer}") String issuer,
+                   @Value("${security.jwt.cache.max-size}") long cacheMaxSize,
+                   MeterRegistry meterRegistry) {
+        this.signingKey = signingKey;
+        // JwtParser неизменяем и потокобезопасен, собираем его один раз
+        this.parser = Jwts.parserBuilder().setSigningKey(signingKey.getVerificationKey()).build();
         this.expirationMs = expirationMs;
         this.issuer = issuer;
+        this.claimsCache = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfter(new UntilTokenExpires())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, claimsCache, "jwt.claims");
+        Gauge.builder("cache.hit.ratio", claimsCache, c -> c.stats().hitRate())
+                .tag("cache", "jwt.claims")
+                .register(meterRegistry);
     }
 
     public String generateToken(String username, List<String> roles) {
         Date now = new Date();
         Date exp = new Date(now.getTime() + expirationMs);
-        return Jwts.builder()
+        var builder = Jwts.builder();
+        if (signingKey.getKeyId() != null) {
+            builder.setHeaderParam("kid", signingKey.getKeyId());
+        }
+        return builder
                 .setSubject(username)
                 .claim("roles", roles)
                 .setIssuer(issuer)
                 .setIssuedAt(now)
+                .claim(ISSUED_AT_MS, now.getTime())
                 .setExpiration(exp)
-                .signWith(key, SignatureAlgorithm.HS256)
+                .signWith(signingKey.getSigningKey(), signingKey.getAlgorithm())
                 .compact();
     }
 
     public Jws<Claims> validateToken(String token) {
-        return Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token);
+        return parser.parseClaimsJws(token);
+    }
+
+    /**
+     * Проверяет токен и возвращает его claims. Результат успешной проверки кэшируется по SHA-256 токена
+     * до момента exp, поэтому повторные запросы с тем же токеном не проверяют подпись заново.
+     * Невалидные токены не кэшируются. Возвращаемый объект общий для всех запросов — только для чтения.
+     */
+    public Claims parseClaims(String token) {
+        return claimsCache.get(sha256(token), h -> validateToken(token).getBody());
+    }
+
+    /**
+     * Время выдачи токена в миллисекундах. У токенов без iat_ms берётся iat с точностью до секунды,
+     * у токенов без iat — Long.MIN_VALUE, и такой токен отзывается любой записью в UserSecurityEpochs.
+     */
+    public static long issuedAtMillis(Claims claims) {
+        if (claims.get(ISSUED_AT_MS) instanceof Number millis) {
+            return millis.longValue();
+        }
+        Date issuedAt = claims.getIssuedAt();
+        return issuedAt == null ? Long.MIN_VALUE : issuedAt.getTime();
     }
 
     public String getUsername(String token) {
-        return validateToken(token).getBody().getSubject();
+        return parseClaims(token).getSubject();
+    }
+
+    private static String sha256(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Запись живёт ровно до истечения токена, а не фиксированное время
+    private static class UntilTokenExpires implements Expiry<String, Claims> {
+        @Override
+        public long expireAfterCreate(String key, Claims claims, long currentTime) {
+            Date exp = claims.getExpiration();
+            if (exp == null) {
+                return 0;
+            }
+            return Math.max(0, TimeUnit.MILLISECONDS.toNanos(exp.getTime() - System.currentTimeMillis()));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Claims claims, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+        @Override
+        public long expireAfterRead(String key, Claims claims, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,64 @@
+package com.denos.bankcards.security;
+
+import com.denos.bankcards.exception.TooManyAttemptsException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ограничивает число попыток входа на имя пользователя и на IP-адрес в фиксированном окне.
+ * Окно отсчитывается от первой попытки: счётчик живёт в кэше с expireAfterWrite и изменяется на месте.
+ * Проверка выполняется до обращения к БД и BCrypt, поэтому перебор паролей не нагружает пул хеширования.
+ */
+@Component
+public class LoginAttemptThrottle {
+
+    private final Cache<String, AtomicInteger> byUsername;
+    private final Cache<String, AtomicInteger> byIp;
+    private final int maxPerUsername;
+    private final int maxPerIp;
+    private final Counter throttled;
+
+    public LoginAttemptThrottle(@Value("${security.login-throttle.window-ms}") long windowMs,
+                                @Value("${security.login-throttle.max-per-username}") int maxPerUsername,
+                                @Value("${security.login-throttle.max-per-ip}") int maxPerIp,
+                                @Value("${security.login-throttle.max-tracked}") long maxTracked,
+                                MeterRegistry meterRegistry) {
+        this.byUsername = Caffeine.newBuilder()
+                .maximumSize(maxTracked)
+                .expireAfterWrite(Duration.ofMillis(windowMs))
+                .build();
+        this.byIp = Caffeine.newBuilder()
+                .maximumSize(maxTracked)
+                .expireAfterWrite(Duration.ofMillis(windowMs))
+                .build();
+        this.maxPerUsername = maxPerUsername;
+        this.maxPerIp = maxPerIp;
+        this.throttled = Counter.builder("login.throttled").register(meterRegistry);
+    }
+
+    /**
+     * Учитывает попытку входа. Бросает TooManyAttemptsException (429), если лимит по имени или IP исчерпан.
+     */
+    public void acquire(String username, String ip) {
+        int ipAttempts = byIp.get(ip, k -> new AtomicInteger()).incrementAndGet();
+        int userAttempts = byUsername.get(String.valueOf(username), k -> new AtomicInteger()).incrementAndGet();
+        if (ipAttempts > maxPerIp || userAttempts > maxPerUsername) {
+            throttled.increment();
+            throw new TooManyAttemptsException("Слишком много попыток входа, повторите позже");
+        }
+    }
+
+    /**
+     * Сбрасывает счётчик пользователя после успешного входа. Счётчик IP не сбрасывается.
+     */
+    public void succeeded(String username) {
+        byUsername.invalidate(username);
+    }
+}
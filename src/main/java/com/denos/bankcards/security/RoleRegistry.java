@@ -0,0 +1,126 @@
+package com.denos.bankcards.security;
+
+import com.denos.bankcards.entity.Role;
+import com.denos.bankcards.enums.RoleType;
+import com.denos.bankcards.repository.RoleRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Справочник ролей в памяти. Сущности Role загружаются из БД при старте, периодически перечитываются
+ * и перечитываются сразу, если запрошенной роли нет в снимке. Списки GrantedAuthority и имён ролей для JWT
+ * посчитаны заранее для каждого набора ролей и общие для всех запросов — только для чтения.
+ */
+@Component
+public class RoleRegistry {
+
+    private static final Map<String, RoleType> BY_NAME = new HashMap<>();
+    private static final Map<RoleType, GrantedAuthority> AUTHORITY = new EnumMap<>(RoleType.class);
+    private static final Map<Set<RoleType>, List<GrantedAuthority>> AUTHORITIES = new HashMap<>();
+    private static final Map<Set<RoleType>, List<String>> NAMES = new HashMap<>();
+
+    static {
+        RoleType[] types = RoleType.values();
+        for (RoleType type : types) {
+            BY_NAME.put(type.name(), type);
+            AUTHORITY.put(type, new SimpleGrantedAuthority(type.name()));
+        }
+        // Все подмножества перечисления: ролей две, наборов четыре
+        for (int mask = 0; mask < 1 << types.length; mask++) {
+            Set<RoleType> set = EnumSet.noneOf(RoleType.class);
+            for (int i = 0; i < types.length; i++) {
+                if ((mask & 1 << i) != 0) {
+                    set.add(types[i]);
+                }
+            }
+            AUTHORITIES.put(set, set.stream().map(AUTHORITY::get).toList());
+            NAMES.put(set, set.stream().map(RoleType::name).toList());
+        }
+    }
+
+    private final RoleRepository roleRepository;
+    private volatile Map<RoleType, Role> roles = new EnumMap<>(RoleType.class);
+
+    public RoleRegistry(RoleRepository roleRepository) {
+        this.roleRepository = roleRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${security.roles.refresh-interval-ms}",
+            initialDelayString = "${security.roles.refresh-interval-ms}")
+    public void refresh() {
+        Map<RoleType, Role> loaded = new EnumMap<>(RoleType.class);
+        for (Role role : roleRepository.findAll()) {
+            loaded.put(role.getRoleName(), role);
+        }
+        roles = loaded;
+    }
+
+    /**
+     * Сущность роли для связи с пользователем. Отсоединена от контекста персистентности и общая для всех
+     * потоков: её можно класть в User.userRoles, но не изменять.
+     */
+    public Role role(RoleType type) {
+        Role role = roles.get(type);
+        if (role == null) {
+            refresh();
+            role = roles.get(type);
+        }
+        if (role == null) {
+            throw new NoSuchElementException("Роль " + type + " не найдена");
+        }
+        return role;
+    }
+
+    public static GrantedAuthority authority(RoleType type) {
+        return AUTHORITY.get(type);
+    }
+
+    public static List<GrantedAuthority> authorities(Collection<Role> roles) {
+        return AUTHORITIES.get(types(roles));
+    }
+
+    public static List<String> names(Collection<Role> roles) {
+        return NAMES.get(types(roles));
+    }
+
+    /**
+     * Права по именам ролей из claim "roles". Известные наборы отдаются из заранее посчитанных списков,
+     * для неизвестных имён список собирается заново.
+     */
+    public static List<GrantedAuthority> authoritiesOfNames(Collection<?> names) {
+        Set<RoleType> set = EnumSet.noneOf(RoleType.class);
+        for (Object name : names) {
+            RoleType type = BY_NAME.get(name.toString());
+            if (type == null) {
+                List<GrantedAuthority> authorities = new ArrayList<>(names.size());
+                names.forEach(n -> authorities.add(new SimpleGrantedAuthority(n.toString())));
+                return authorities;
+            }
+            set.add(type);
+        }
+        return AUTHORITIES.get(set);
+    }
+
+    private static Set<RoleType> types(Collection<Role> roles) {
+        Set<RoleType> set = EnumSet.noneOf(RoleType.class);
+        if (roles != null) {
+            roles.forEach(role -> set.add(role.getRoleName()));
+        }
+        return set;
+    }
+}
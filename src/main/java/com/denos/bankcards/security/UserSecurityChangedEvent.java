@@ -0,0 +1,12 @@
+package com.denos.bankcards.security;
+
+/**
+ * Публикуется после изменений пользователя, которые влияют на аутентификацию: сбрасывает кэш
+ * пользователей и, кроме REGISTERED, отзывает уже выданные токены.
+ */
+public record UserSecurityChangedEvent(String username, Change change) {
+
+    public enum Change {
+        REGISTERED, DISABLED, ENABLED, ROLES_CHANGED, DELETED
+    }
+}
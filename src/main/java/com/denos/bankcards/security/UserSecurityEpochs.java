@@ -0,0 +1,62 @@
+package com.denos.bankcards.security;
+
+import com.denos.bankcards.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Таблица отзыва токенов в памяти: для пользователя хранится момент в миллисекундах, раньше которого
+ * выданные токены недействительны (время выдачи — JwtUtil.issuedAtMillis). Проверка — одно обращение
+ * к ConcurrentHashMap, без запроса к БД. Отключённые пользователи заблокированы бессрочно, после смены ролей или удаления
+ * отзываются токены, выданные до изменения. Записи старше срока жизни токена больше ничего не отсекают
+ * и периодически удаляются. Таблица своя у каждого экземпляра приложения, поэтому режим CLAIMS,
+ * который на неё опирается, подходит только для одного экземпляра.
+ */
+@Component
+public class UserSecurityEpochs {
+
+    private static final long FOREVER = Long.MAX_VALUE;
+
+    private final Map<String, Long> revokedUntil = new ConcurrentHashMap<>();
+    private final UserRepository userRepository;
+    private final long tokenLifetimeMs;
+
+    public UserSecurityEpochs(UserRepository userRepository,
+                              @Value("${security.jwt.expiration-ms}") long expirationMs) {
+        this.userRepository = userRepository;
+        this.tokenLifetimeMs = expirationMs;
+    }
+
+    public boolean isRevoked(String username, long issuedAtMs) {
+        Long until = revokedUntil.get(username);
+        return until != null && issuedAtMs < until;
+    }
+
+    @EventListener
+    public void onUserSecurityChanged(UserSecurityChangedEvent event) {
+        switch (event.change()) {
+            case REGISTERED -> { }
+            case DISABLED -> revokedUntil.put(event.username(), FOREVER);
+            // Следующая миллисекунда: токен, выданный в ту же миллисекунду, что и изменение, тоже отзывается
+            case ENABLED, ROLES_CHANGED, DELETED -> revokedUntil.put(event.username(), System.currentTimeMillis() + 1);
+        }
+    }
+
+    // Таблица живёт в памяти: после перезапуска восстанавливаем хотя бы отключённых пользователей
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadDisabledUsers() {
+        userRepository.findDisabledUsernames().forEach(username -> revokedUntil.put(username, FOREVER));
+    }
+
+    @Scheduled(fixedDelayString = "${security.jwt.expiration-ms}")
+    public void purgeStale() {
+        long threshold = System.currentTimeMillis() - tokenLifetimeMs;
+        revokedUntil.values().removeIf(until -> until != FOREVER && until < threshold);
+    }
+}
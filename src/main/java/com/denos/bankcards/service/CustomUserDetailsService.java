@@ -2,27 +2,65 @@ package com.denos.bankcards.service;
 
 import com.denos.bankcards.entity.User;
 import com.denos.bankcards.repository.UserRepository;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import com.denos.bankcards.security.RoleRegistry;
+import com.denos.bankcards.security.UserSecurityChangedEvent;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.security.core.userdetails.*;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+
+/**
+ * Загружает пользователя для Spring Security. Результат кэшируется по username с ограничением
+ * по размеру и времени жизни; Cache.get выполняет загрузку одного ключа один раз, поэтому волна
+ * запросов к ещё не закэшированному пользователю даёт один SQL-запрос. Записи сбрасываются
+ * по UserSecurityChangedEvent. Отсутствующие пользователи не кэшируются.
+ */
 @Service
 public class CustomUserDetailsService implements UserDetailsService {
 
     private final UserRepository userRepository;
-    public CustomUserDetailsService(UserRepository repo) {
+    private final Cache<String, UserDetails> cache;
+
+    public CustomUserDetailsService(UserRepository repo,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${security.user-details.cache.max-size}") long cacheMaxSize,
+                                    @Value("${security.user-details.cache.ttl-ms}") long cacheTtlMs) {
         this.userRepository = repo;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(Duration.ofMillis(cacheTtlMs))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "user.details");
+        Gauge.builder("cache.hit.ratio", cache, c -> c.stats().hitRate())
+                .tag("cache", "user.details")
+                .register(meterRegistry);
     }
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        User u = userRepository.findByUsername(username)
+        return cache.get(username, this::load);
+    }
+
+    @EventListener
+    public void onUserSecurityChanged(UserSecurityChangedEvent event) {
+        cache.invalidate(event.username());
+    }
+
+    private UserDetails load(String username) {
+        User u = userRepository.findWithRolesByUsername(username)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found"));
-        var authorities = u.getUserRoles().stream().map(r -> new SimpleGrantedAuthority(r.getRoleName().name())).toList();
         return org.springframework.security.core.userdetails.User.builder()
                 .username(u.getUsername())
                 .password(u.getPassword())
-                .authorities(authorities)
+                .authorities(RoleRegistry.authorities(u.getUserRoles()))
                 .disabled(!u.isEnabled())
                 .build();
     }
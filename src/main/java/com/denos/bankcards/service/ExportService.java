@@ -0,0 +1,113 @@
+package com.denos.bankcards.service;
+
+import com.denos.bankcards.dto.CardDto;
+import com.denos.bankcards.dto.UserDto;
+import com.denos.bankcards.entity.Card;
+import com.denos.bankcards.repository.CardRepository;
+import com.denos.bankcards.repository.UserRepository;
+import com.denos.bankcards.util.CryptoUtil;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.persistence.EntityManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Выгрузка карт и пользователей в NDJSON (один JSON-объект на строку). Строки читаются из БД курсором
+ * и сразу пишутся в поток ответа, после каждой порции вывод сбрасывается клиенту, а загруженные карты
+ * отсоединяются от контекста персистентности, поэтому память не зависит от числа строк. Роли пользователей
+ * догружаются одним запросом на порцию.
+ */
+@Service
+public class ExportService {
+
+    private final CardRepository cardRepository;
+    private final UserRepository userRepository;
+    private final CryptoUtil cryptoUtil;
+    private final EntityManager entityManager;
+    private final UserQueryService userQueryService;
+    private final ObjectWriter writer;
+
+    public ExportService(CardRepository cardRepository,
+                         UserRepository userRepository,
+                         CryptoUtil cryptoUtil,
+                         EntityManager entityManager,
+                         UserQueryService userQueryService,
+                         ObjectMapper objectMapper) {
+        this.cardRepository = cardRepository;
+        this.userRepository = userRepository;
+        this.cryptoUtil = cryptoUtil;
+        this.entityManager = entityManager;
+        this.userQueryService = userQueryService;
+        // Сбрасываем вывод сами раз в порцию, а не после каждой строки
+        this.writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    @Transactional(readOnly = true)
+    public long exportCards(OutputStream out) throws IOException {
+        try (Stream<Card> cards = cardRepository.streamAllOrderById();
+             JsonGenerator generator = ndjson(out)) {
+            long written = 0;
+            for (Iterator<Card> it = cards.iterator(); it.hasNext(); ) {
+                writer.writeValue(generator, CardDto.fromEntity(it.next(), cryptoUtil));
+                if (++written % CardRepository.EXPORT_FETCH_SIZE == 0) {
+                    generator.flush();
+                    entityManager.clear();
+                }
+            }
+            return finish(generator, written);
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public long exportUsers(OutputStream out) throws IOException {
+        try (var users = userRepository.streamAllAsDto();
+             JsonGenerator generator = ndjson(out)) {
+            long written = 0;
+            List<UserDto> chunk = new ArrayList<>(UserRepository.EXPORT_FETCH_SIZE);
+            for (var it = users.iterator(); it.hasNext(); ) {
+                chunk.add(it.next());
+                if (chunk.size() == UserRepository.EXPORT_FETCH_SIZE || !it.hasNext()) {
+                    written += writeUsers(generator, chunk);
+                }
+            }
+            return finish(generator, written);
+        }
+    }
+
+    private int writeUsers(JsonGenerator generator, List<UserDto> chunk) throws IOException {
+        for (UserDto user : userQueryService.withRoles(chunk)) {
+            writer.writeValue(generator, user);
+        }
+        generator.flush();
+        int size = chunk.size();
+        chunk.clear();
+        return size;
+    }
+
+    // Поток ответа закрывает контейнер, генератор его не закрывает
+    private JsonGenerator ndjson(OutputStream out) throws IOException {
+        JsonGenerator generator = writer.createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setRootValueSeparator(new SerializedString("\n"));
+        return generator;
+    }
+
+    private static long finish(JsonGenerator generator, long written) throws IOException {
+        if (written > 0) {
+            generator.writeRaw('\n');
+        }
+        generator.flush();
+        return written;
+    }
+}
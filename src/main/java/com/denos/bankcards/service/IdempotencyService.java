@@ -0,0 +1,144 @@
+package com.denos.bankcards.service;
+
+import com.denos.bankcards.dto.TransferRequest;
+import com.denos.bankcards.entity.IdempotencyKey;
+import com.denos.bankcards.entity.IdempotencyRecord;
+import com.denos.bankcards.exception.IdempotencyKeyConflictException;
+import com.denos.bankcards.exception.TransferRejectedException;
+import com.denos.bankcards.repository.IdempotencyRecordRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Optional;
+
+/**
+ * Хранит результаты переводов по заголовку Idempotency-Key. Таблица idempotency_keys — источник истины,
+ * перед ней стоит ограниченный по размеру и времени жизни кэш, чтобы повторы клиента в пределах окна
+ * отвечались без обращения к БД.
+ */
+@Service
+public class IdempotencyService {
+
+    public static final int MAX_KEY_LENGTH = 100;
+
+    private final IdempotencyRecordRepository repository;
+    private final Cache<IdempotencyKey, IdempotencyRecord> cache;
+    private final Duration ttl;
+
+    public IdempotencyService(IdempotencyRecordRepository repository,
+                              MeterRegistry meterRegistry,
+                              @Value("${bank.idempotency.ttl-ms}") long ttlMs,
+                              @Value("${bank.idempotency.cache.max-size}") long cacheMaxSize,
+                              @Value("${bank.idempotency.cache.ttl-ms}") long cacheTtlMs) {
+        this.repository = repository;
+        this.ttl = Duration.ofMillis(ttlMs);
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(Duration.ofMillis(Math.min(cacheTtlMs, ttlMs)))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "transfer.idempotency");
+        Gauge.builder("cache.hit.ratio", cache, c -> c.stats().hitRate())
+                .tag("cache", "transfer.idempotency")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Возвращает сохранённый ответ для ключа, если запрос с ним уже выполнялся и срок записи не истёк.
+     * Сохранённый отказ повторяется как TransferRejectedException с тем же текстом.
+     * Тот же ключ с другим телом запроса — ошибка клиента.
+     */
+    public Optional<String> findResponse(String username, String key, String requestHash) {
+        IdempotencyKey id = new IdempotencyKey(username, key);
+        Instant now = Instant.now();
+        IdempotencyRecord record = cache.getIfPresent(id);
+        if (record == null) {
+            record = repository.findById(id).orElse(null);
+            if (record == null) {
+                return Optional.empty();
+            }
+            cache.put(id, record);
+        }
+        if (!record.getExpiresAt().isAfter(now)) {
+            // Истёкшая запись удаляется сразу, не дожидаясь purgeExpired, иначе новый результат не сохранится
+            cache.invalidate(id);
+            repository.deleteIfExpired(id, now);
+            return Optional.empty();
+        }
+        if (!record.getRequestHash().equals(requestHash)) {
+            throw new IdempotencyKeyConflictException("Idempotency-Key уже использован для другого запроса");
+        }
+        if (record.isFailed()) {
+            throw new TransferRejectedException(record.getResponse());
+        }
+        return Optional.of(record.getResponse());
+    }
+
+    /**
+     * Сохраняет результат в текущей транзакции. Сразу выполняет INSERT, чтобы параллельный запрос
+     * с тем же ключом упал на первичном ключе до фиксации, а не после.
+     */
+    public IdempotencyRecord record(String username, String key, String requestHash, String response) {
+        return repository.saveAndFlush(newRecord(username, key, requestHash, response, false));
+    }
+
+    /**
+     * Сохраняет отказ в переводе в собственной транзакции: транзакция перевода к этому моменту откачена.
+     */
+    public IdempotencyRecord recordFailure(String username, String key, String requestHash, String message) {
+        return repository.saveAndFlush(newRecord(username, key, requestHash, message, true));
+    }
+
+    /**
+     * Кладёт зафиксированный результат в кэш. Вызывается только после коммита транзакции перевода.
+     */
+    public void remember(IdempotencyRecord record) {
+        cache.put(record.getId(), record);
+    }
+
+    @Scheduled(fixedDelayString = "${bank.idempotency.purge-interval-ms}")
+    public void purgeExpired() {
+        repository.deleteExpired(Instant.now());
+    }
+
+    public static void validateKey(String key) {
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Idempotency-Key должен содержать от 1 до " + MAX_KEY_LENGTH + " символов");
+        }
+    }
+
+    public static String requestHash(TransferRequest req) {
+        String canonical = req.getFromCardId() + "|" + req.getToCardId() + "|"
+                + req.getAmount().stripTrailingZeros().toPlainString();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(canonical.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private IdempotencyRecord newRecord(String username, String key, String requestHash, String response, boolean failed) {
+        Instant now = Instant.now();
+        return IdempotencyRecord.builder()
+                .id(new IdempotencyKey(username, key))
+                .requestHash(requestHash)
+                .response(response)
+                .failed(failed)
+                .createdAt(now)
+                .expiresAt(now.plus(ttl))
+                .build();
+    }
+}
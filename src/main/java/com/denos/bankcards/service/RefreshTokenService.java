@@ -0,0 +1,143 @@
+package com.denos.bankcards.service;
+
+import com.denos.bankcards.entity.RefreshToken;
+import com.denos.bankcards.exception.InvalidRefreshTokenException;
+import com.denos.bankcards.repository.RefreshTokenRepository;
+import com.denos.bankcards.security.UserSecurityChangedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.UUID;
+
+/**
+ * Одноразовые refresh-токены. Клиент получает 32 случайных байта, в refresh_tokens хранится только
+ * HMAC-SHA256 токена, поэтому обновление стоит одного поиска по первичному ключу и одного HMAC
+ * вместо проверки пароля через BCrypt. Каждое обновление гасит предъявленный токен и выдаёт следующий
+ * в той же цепочке (family_id). Повторное предъявление погашенного токена означает, что токен утёк:
+ * вся цепочка удаляется, и пользователю придётся войти заново.
+ */
+@Slf4j
+@Service
+public class RefreshTokenService {
+
+    private static final int TOKEN_BYTES = 32;
+    private static final int MIN_HASH_KEY_BYTES = 32;
+
+    private final RefreshTokenRepository repository;
+    private final SecureRandom random = new SecureRandom();
+    private final ThreadLocal<Mac> mac;
+    private final Duration ttl;
+    private final Counter reuseDetected;
+
+    public RefreshTokenService(RefreshTokenRepository repository,
+                               MeterRegistry meterRegistry,
+                               @Value("${security.jwt.refresh.hash-key}") String hashKey,
+                               @Value("${security.jwt.refresh.ttl-ms}") long ttlMs) {
+        this.repository = repository;
+        this.ttl = Duration.ofMillis(ttlMs);
+        byte[] key = Base64.getDecoder().decode(hashKey);
+        if (key.length < MIN_HASH_KEY_BYTES) {
+            throw new IllegalStateException("security.jwt.refresh.hash-key должен быть не короче "
+                    + MIN_HASH_KEY_BYTES + " байт");
+        }
+        SecretKeySpec keySpec = new SecretKeySpec(key, "HmacSHA256");
+        this.mac = ThreadLocal.withInitial(() -> {
+            try {
+                Mac m = Mac.getInstance("HmacSHA256");
+                m.init(keySpec);
+                return m;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        this.reuseDetected = Counter.builder("auth.refresh.reuse.detected").register(meterRegistry);
+    }
+
+    /**
+     * Выдаёт первый токен новой цепочки, вызывается после успешного входа по паролю.
+     */
+    @Transactional
+    public String issue(String username) {
+        return issue(username, UUID.randomUUID(), Instant.now());
+    }
+
+    /**
+     * Гасит предъявленный токен и выдаёт следующий. Строка блокируется на время транзакции,
+     * поэтому из двух одновременных запросов с одним токеном успешен только первый, второй
+     * считается повторным использованием.
+     */
+    @Transactional(noRollbackFor = InvalidRefreshTokenException.class)
+    public Rotation rotate(String rawToken) {
+        if (rawToken == null || rawToken.isBlank()) {
+            throw new InvalidRefreshTokenException("Invalid refresh token");
+        }
+        Instant now = Instant.now();
+        RefreshToken current = repository.findForUpdate(hash(rawToken))
+                .orElseThrow(() -> new InvalidRefreshTokenException("Invalid refresh token"));
+        if (current.getUsedAt() != null) {
+            // Удаление цепочки должно зафиксироваться, поэтому исключение не откатывает транзакцию
+            repository.deleteByFamily(current.getFamilyId());
+            reuseDetected.increment();
+            log.warn("Повторное использование refresh-токена пользователя {}, цепочка отозвана", current.getUsername());
+            throw new InvalidRefreshTokenException("Refresh token has already been used");
+        }
+        if (!current.getExpiresAt().isAfter(now)) {
+            throw new InvalidRefreshTokenException("Refresh token has expired");
+        }
+        current.setUsedAt(now);
+        String next = issue(current.getUsername(), current.getFamilyId(), now);
+        return new Rotation(current.getUsername(), next);
+    }
+
+    public void revokeAll(String username) {
+        repository.deleteByUsername(username);
+    }
+
+    // Отключённый или удалённый пользователь не должен продлевать сессию уже выданными токенами
+    @EventListener
+    public void onUserSecurityChanged(UserSecurityChangedEvent event) {
+        switch (event.change()) {
+            case DISABLED, DELETED -> revokeAll(event.username());
+            case REGISTERED, ENABLED, ROLES_CHANGED -> { }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${security.jwt.refresh.purge-interval-ms}")
+    public void purgeExpired() {
+        repository.deleteExpired(Instant.now());
+    }
+
+    private String issue(String username, UUID familyId, Instant now) {
+        byte[] token = new byte[TOKEN_BYTES];
+        random.nextBytes(token);
+        String rawToken = Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+        repository.save(RefreshToken.builder()
+                .tokenHash(hash(rawToken))
+                .familyId(familyId)
+                .username(username)
+                .expiresAt(now.plus(ttl))
+                .build());
+        return rawToken;
+    }
+
+    private String hash(String rawToken) {
+        return HexFormat.of().formatHex(mac.get().doFinal(rawToken.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    public record Rotation(String username, String refreshToken) {}
+}
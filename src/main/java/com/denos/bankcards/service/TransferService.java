@@ -0,0 +1,384 @@
+package com.denos.bankcards.service;
+
+import com.denos.bankcards.dto.BatchTransferRequest;
+import com.denos.bankcards.dto.BatchTransferResponse;
+import com.denos.bankcards.dto.TransferItemResult;
+import com.denos.bankcards.dto.TransferRequest;
+import com.denos.bankcards.entity.Card;
+import com.denos.bankcards.entity.IdempotencyRecord;
+import com.denos.bankcards.entity.Transfer;
+import com.denos.bankcards.enums.CardStatus;
+import com.denos.bankcards.enums.TransferItemStatus;
+import com.denos.bankcards.enums.TransferMode;
+import com.denos.bankcards.exception.TransferRejectedException;
+import com.denos.bankcards.repository.CardRepository;
+import com.denos.bankcards.repository.TransferRepository;
+import com.denos.bankcards.repository.projection.CardNumberView;
+import com.denos.bankcards.util.CryptoUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+public class TransferService {
+
+    private final CardRepository cardRepository;
+    private final TransferRepository transferRepository;
+    private final CryptoUtil cryptoUtil;
+    private final IdempotencyService idempotencyService;
+    private final TransactionTemplate transactionTemplate;
+    private final TransferMode mode;
+    private final int maxBatchSize;
+    private final int maxAttempts;
+    private final long backoffMs;
+    private final long maxBackoffMs;
+
+    public TransferService(CardRepository cardRepository,
+                           TransferRepository transferRepository,
+                           CryptoUtil cryptoUtil,
+                           IdempotencyService idempotencyService,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${bank.transfer.mode}") TransferMode mode,
+                           @Value("${bank.transfer.batch.max-size}") int maxBatchSize,
+                           @Value("${bank.transfer.retry.max-attempts}") int maxAttempts,
+                           @Value("${bank.transfer.retry.backoff-ms}") long backoffMs,
+                           @Value("${bank.transfer.retry.max-backoff-ms}") long maxBackoffMs) {
+        this.cardRepository = cardRepository;
+        this.transferRepository = transferRepository;
+        this.cryptoUtil = cryptoUtil;
+        this.idempotencyService = idempotencyService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.mode = mode;
+        this.maxBatchSize = maxBatchSize;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffMs = Math.max(1, backoffMs);
+        this.maxBackoffMs = Math.max(this.backoffMs, maxBackoffMs);
+    }
+
+    public String transfer(String username, TransferRequest req) {
+        return transfer(username, req, mode);
+    }
+
+    public String transfer(String username, TransferRequest req, TransferMode mode) {
+        validate(req);
+        return executeWithRetry(status -> doTransfer(username, req, mode));
+    }
+
+    /**
+     * Перевод с ключом идемпотентности: повтор с тем же ключом возвращает сохранённый ответ или отказ,
+     * не трогая карты. Успешный результат сохраняется в той же транзакции, что и движение средств.
+     */
+    public String transferIdempotent(String username, TransferRequest req, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return transfer(username, req);
+        }
+        IdempotencyService.validateKey(idempotencyKey);
+        validate(req);
+
+        String requestHash = IdempotencyService.requestHash(req);
+        var replay = idempotencyService.findResponse(username, idempotencyKey, requestHash);
+        if (replay.isPresent()) {
+            return replay.get();
+        }
+
+        try {
+            IdempotencyRecord record = executeWithRetry(status -> idempotencyService.record(
+                    username, idempotencyKey, requestHash, doTransfer(username, req, mode)));
+            idempotencyService.remember(record);
+            return record.getResponse();
+        } catch (DataIntegrityViolationException ex) {
+            // Параллельный запрос с тем же ключом успел зафиксироваться первым, наш перевод откатился
+            return idempotencyService.findResponse(username, idempotencyKey, requestHash).orElseThrow(() -> ex);
+        } catch (TransferRejectedException | AccessDeniedException | NoSuchElementException ex) {
+            // Отказ по картам сохраняется, чтобы повтор с тем же ключом не выполнил перевод позже, а получил тот же отказ.
+            // Сбои БД и конкурентного доступа не сохраняются: повтор выполняет перевод заново
+            rememberRejection(username, idempotencyKey, requestHash, ex);
+            throw ex;
+        }
+    }
+
+    private void rememberRejection(String username, String idempotencyKey, String requestHash, RuntimeException ex) {
+        try {
+            idempotencyService.remember(idempotencyService.recordFailure(username, idempotencyKey, requestHash, ex.getMessage()));
+        } catch (DataIntegrityViolationException duplicate) {
+            // Параллельный запрос с тем же ключом уже сохранил свой результат
+        }
+    }
+
+    private String doTransfer(String username, TransferRequest req, TransferMode mode) {
+        return mode == TransferMode.CONDITIONAL_UPDATE
+                ? doConditionalTransfer(username, req)
+                : doEntityTransfer(username, req);
+    }
+
+    /**
+     * Применяет пакет переводов в одной транзакции: все карты пакета, принадлежащие пользователю, загружаются
+     * и блокируются одним запросом по возрастанию card_id, изменения применяются в памяти и сбрасываются одним flush.
+     * Отклонённый перевод не мешает остальным, если не запрошен режим «все или ничего».
+     */
+    public BatchTransferResponse transferBatch(String username, BatchTransferRequest req) {
+        List<TransferRequest> items = req.getTransfers();
+        if (items == null || items.isEmpty()) {
+            throw new IllegalArgumentException("Пакет переводов пуст");
+        }
+        if (items.size() > maxBatchSize) {
+            throw new IllegalArgumentException("Пакет не может содержать больше " + maxBatchSize + " переводов");
+        }
+        return executeWithRetry(status -> {
+            BatchTransferResponse response = doBatchTransfer(username, items, req.isAllOrNothing());
+            if (req.isAllOrNothing() && response.getFailed() > 0) {
+                status.setRollbackOnly();
+            }
+            return response;
+        });
+    }
+
+    private BatchTransferResponse doBatchTransfer(String username, List<TransferRequest> items, boolean allOrNothing) {
+        Set<Long> ids = new TreeSet<>();
+        for (TransferRequest item : items) {
+            if (item.getFromCardId() != null) ids.add(item.getFromCardId());
+            if (item.getToCardId() != null) ids.add(item.getToCardId());
+        }
+        Map<Long, Card> cards = cardRepository.findAllOwnedByIdForUpdate(ids, username).stream()
+                .collect(Collectors.toMap(Card::getId, Function.identity()));
+        // Чужие карты отличаем от несуществующих отдельным запросом, только если какие-то карты не вернулись
+        Set<Long> existing = cards.size() == ids.size() ? cards.keySet() : cardRepository.findExistingIds(ids);
+
+        List<TransferItemResult> results = new ArrayList<>(items.size());
+        List<Transfer> ledger = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            TransferRequest item = items.get(i);
+            String error = batchItemError(item, cards, existing);
+            if (error != null) {
+                results.add(TransferItemResult.of(i, item, TransferItemStatus.REJECTED, error));
+                continue;
+            }
+            Card from = cards.get(item.getFromCardId());
+            Card to = cards.get(item.getToCardId());
+            from.setBalance(from.getBalance().subtract(item.getAmount()));
+            to.setBalance(to.getBalance().add(item.getAmount()));
+            ledger.add(toLedgerEntry(username, item));
+            results.add(TransferItemResult.of(i, item, TransferItemStatus.APPLIED, null));
+        }
+
+        if (allOrNothing && ledger.size() < items.size()) {
+            // Транзакция будет откачена, применённые в памяти переводы не сохранятся
+            results.replaceAll(r -> r.getStatus() == TransferItemStatus.APPLIED
+                    ? TransferItemResult.of(r.getIndex(), items.get(r.getIndex()), TransferItemStatus.ROLLED_BACK, null)
+                    : r);
+        } else {
+            transferRepository.saveAll(ledger);
+        }
+        return BatchTransferResponse.of(results);
+    }
+
+    private static String batchItemError(TransferRequest item, Map<Long, Card> cards, Set<Long> existing) {
+        String error = validationError(item);
+        if (error != null) {
+            return error;
+        }
+        if (!existing.contains(item.getFromCardId()) || !existing.contains(item.getToCardId())) {
+            return "Карта не найдена";
+        }
+        Card from = cards.get(item.getFromCardId());
+        Card to = cards.get(item.getToCardId());
+        if (from == null || to == null) {
+            return "Вы можете переводить только между своими картами";
+        }
+        if (from.getStatus() != CardStatus.ACTIVE || to.getStatus() != CardStatus.ACTIVE) {
+            return "Перевод возможен только между активными картами";
+        }
+        if (from.getBalance().compareTo(item.getAmount()) < 0) {
+            return "Недостаточно средств";
+        }
+        return null;
+    }
+
+    private String doEntityTransfer(String username, TransferRequest req) {
+        // Строки карт блокируются строго по возрастанию card_id, иначе встречные переводы
+        // A -> B и B -> A захватывают блокировки в разном порядке и взаимно блокируются.
+        // Владелец проверяется в том же запросе, пользователь не загружается
+        Long firstId = Math.min(req.getFromCardId(), req.getToCardId());
+        Long secondId = Math.max(req.getFromCardId(), req.getToCardId());
+        Card first = lockOwned(firstId, username);
+        Card second = lockOwned(secondId, username);
+
+        Card from = first.getId().equals(req.getFromCardId()) ? first : second;
+        Card to = from == first ? second : first;
+
+        if (from.getStatus() != CardStatus.ACTIVE || to.getStatus() != CardStatus.ACTIVE) {
+            throw new TransferRejectedException("Перевод возможен только между активными картами");
+        }
+
+        if (from.getBalance().compareTo(req.getAmount()) < 0) {
+            throw new TransferRejectedException("Недостаточно средств");
+        }
+
+        from.setBalance(from.getBalance().subtract(req.getAmount()));
+        to.setBalance(to.getBalance().add(req.getAmount()));
+        transferRepository.save(toLedgerEntry(username, req));
+
+        return successMessage(req,
+                masked(from.getPanLast4(), from.getCardNumberCipher(), from.getCardNumberEncrypted()),
+                masked(to.getPanLast4(), to.getCardNumberCipher(), to.getCardNumberEncrypted()));
+    }
+
+    private Card lockOwned(Long id, String username) {
+        return cardRepository.findOwnedByIdForUpdate(id, username).orElseThrow(() -> cardRepository.existsById(id)
+                ? new AccessDeniedException("Вы можете переводить только между своими картами")
+                : new NoSuchElementException("Карта не найдена"));
+    }
+
+    /**
+     * Перевод без загрузки сущностей: два условных UPDATE, число изменённых строк служит проверкой
+     * владельца, статуса и остатка. Строки обновляются по возрастанию card_id, как и в entity-режиме.
+     */
+    private String doConditionalTransfer(String username, TransferRequest req) {
+        // Номера читаются до UPDATE, чтобы не удерживать блокировки строк на время лишнего запроса
+        Map<Long, CardNumberView> numbers = cardRepository.findByIdIn(List.of(req.getFromCardId(), req.getToCardId()))
+                .stream()
+                .collect(Collectors.toMap(CardNumberView::getId, Function.identity()));
+
+        boolean debitFirst = req.getFromCardId() < req.getToCardId();
+        if (debitFirst) {
+            debit(username, req);
+            credit(username, req);
+        } else {
+            credit(username, req);
+            debit(username, req);
+        }
+        transferRepository.save(toLedgerEntry(username, req));
+
+        CardNumberView from = numberOf(numbers, req.getFromCardId());
+        CardNumberView to = numberOf(numbers, req.getToCardId());
+        return successMessage(req,
+                masked(from.getPanLast4(), from.getCardNumberCipher(), from.getCardNumberEncrypted()),
+                masked(to.getPanLast4(), to.getCardNumberCipher(), to.getCardNumberEncrypted()));
+    }
+
+    // Номер читался до UPDATE: карты могло не быть в выборке, если её удалили или создали между запросами
+    private static CardNumberView numberOf(Map<Long, CardNumberView> numbers, Long cardId) {
+        CardNumberView number = numbers.get(cardId);
+        if (number == null) {
+            throw new NoSuchElementException("Карта не найдена");
+        }
+        return number;
+    }
+
+    private void debit(String username, TransferRequest req) {
+        if (cardRepository.debitIfAvailable(req.getFromCardId(), username, req.getAmount()) == 0) {
+            throw rejection(req.getFromCardId(), username, true);
+        }
+    }
+
+    private void credit(String username, TransferRequest req) {
+        if (cardRepository.creditIfActive(req.getToCardId(), username, req.getAmount()) == 0) {
+            throw rejection(req.getToCardId(), username, false);
+        }
+    }
+
+    /**
+     * Разбирает причину отказа условного UPDATE. Выполняется только на неуспешном пути,
+     * транзакция после этого всё равно откатывается.
+     */
+    private RuntimeException rejection(Long cardId, String username, boolean debit) {
+        Card card = cardRepository.findById(cardId).orElseThrow(() -> new NoSuchElementException("Карта не найдена"));
+        if (!cardRepository.existsByIdAndUserUsername(cardId, username)) {
+            return new AccessDeniedException("Вы можете переводить только между своими картами");
+        }
+        if (card.getStatus() != CardStatus.ACTIVE) {
+            return new TransferRejectedException("Перевод возможен только между активными картами");
+        }
+        return new TransferRejectedException(debit ? "Недостаточно средств" : "Не удалось зачислить средства на карту");
+    }
+
+    private static Transfer toLedgerEntry(String username, TransferRequest req) {
+        return Transfer.builder()
+                .fromCardId(req.getFromCardId())
+                .toCardId(req.getToCardId())
+                .amount(req.getAmount())
+                .initiatedBy(username)
+                .createdAt(Instant.now())
+                .build();
+    }
+
+    // Расшифровка нужна только для строк, которые CardPanBackfillJob ещё не заполнил
+    private String masked(String panLast4, byte[] cipher, String encrypted) {
+        if (panLast4 != null) {
+            return CryptoUtil.maskLastFour(panLast4);
+        }
+        String decrypted = cipher != null ? cryptoUtil.decryptFromBytes(cipher) : cryptoUtil.decrypt(encrypted);
+        return CryptoUtil.maskCardNumber(decrypted);
+    }
+
+    private static String successMessage(TransferRequest req, String fromMasked, String toMasked) {
+        return String.format("Перевод %s₽ выполнен с карты %s на карту %s",
+                req.getAmount(), fromMasked, toMasked);
+    }
+
+    private static void validate(TransferRequest req) {
+        String error = validationError(req);
+        if (error != null) {
+            throw new IllegalArgumentException(error);
+        }
+    }
+
+    private static String validationError(TransferRequest req) {
+        if (req.getFromCardId() == null || req.getToCardId() == null) {
+            return "Не указаны карты для перевода";
+        }
+        if (req.getFromCardId().equals(req.getToCardId())) {
+            return "Нельзя перевести средства на ту же карту";
+        }
+        if (req.getAmount() == null || req.getAmount().compareTo(BigDecimal.ZERO) <= 0) {
+            return "Сумма перевода должна быть положительной";
+        }
+        return null;
+    }
+
+    /**
+     * Выполняет callback в отдельной транзакции и повторяет его при deadlock,
+     * ошибке сериализации или таймауте блокировки с ограниченной экспоненциальной задержкой.
+     */
+    private <T> T executeWithRetry(TransactionCallback<T> action) {
+        int attempt = 1;
+        while (true) {
+            try {
+                return transactionTemplate.execute(action);
+            } catch (ConcurrencyFailureException ex) {
+                if (attempt >= maxAttempts) {
+                    throw ex;
+                }
+                backoff(attempt++);
+            }
+        }
+    }
+
+    private void backoff(int attempt) {
+        long ceiling = Math.min(maxBackoffMs, backoffMs << Math.min(attempt - 1, 20));
+        long delay = ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Перевод прерван", e);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.denos.bankcards.service;
+
+import com.denos.bankcards.dto.CursorPage;
+import com.denos.bankcards.dto.UserDto;
+import com.denos.bankcards.enums.RoleType;
+import com.denos.bankcards.repository.UserRepository;
+import com.denos.bankcards.repository.projection.UserRoleRow;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Списки пользователей с ролями за два запроса на страницу: пользователи по ключу user_id
+ * и роли всей страницы одним запросом по user_roles, без запроса ролей на каждого пользователя.
+ */
+@Service
+public class UserQueryService {
+
+    private final UserRepository userRepository;
+
+    public UserQueryService(UserRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+
+    @Transactional(readOnly = true)
+    public CursorPage<UserDto> page(String cursor, int limit) {
+        CursorPage.checkLimit(limit);
+        List<UserDto> rows = userRepository.findPageAsDto(CursorPage.decodeCursor(cursor), Limit.of(limit + 1));
+        CursorPage<UserDto> page = CursorPage.of(rows, limit, UserDto::getId, user -> user);
+        withRoles(page.getItems());
+        return page;
+    }
+
+    /**
+     * Заполняет роли у переданных пользователей одним запросом и возвращает тот же список.
+     */
+    public List<UserDto> withRoles(List<UserDto> users) {
+        if (users.isEmpty()) {
+            return users;
+        }
+        Map<Long, Set<RoleType>> roles = new HashMap<>();
+        for (UserRoleRow row : userRepository.findRolesByUserIdIn(users.stream().map(UserDto::getId).toList())) {
+            roles.computeIfAbsent(row.userId(), id -> EnumSet.noneOf(RoleType.class)).add(row.roleName());
+        }
+        for (UserDto user : users) {
+            user.setRoles(roles.getOrDefault(user.getId(), Set.of()));
+        }
+        return users;
+    }
+}
@@ -1,75 +1,274 @@
 package com.denos.bankcards.util;
 
-import org.springframework.beans.factory.annotation.Value;
+import com.denos.bankcards.config.CardKeyProperties;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.Cipher;
+import javax.crypto.Mac;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.security.SecureRandom;
+import java.util.List;
+import java.util.Map;
 
 @Component
 public class CryptoUtil {
     private static final String ALGO = "AES/GCM/NoPadding";
     private static final int TAGLEN_BIT = 128;
+    private static final int TAG_LEN_BYTE = TAGLEN_BIT / 8;
     private static final int IV_LEN_BYTE = 12;
 
-    private final byte[] key;
+    // Бинарный формат: версия (1 байт) || id ключа (1 байт) || IV || ciphertext || tag
+    public static final byte FORMAT_V1 = 1;
+    private static final int HEADER_LEN_BYTE = 2;
 
-    public CryptoUtil(@Value("${security.jwt.secret}") String secret) {
+    // Ключ, выведенный из прежнего общего секрета. Base64-формат не хранит id ключа и всегда использует его
+    public static final int LEGACY_KEY_ID = 0;
+    private static final int MAX_KEY_ID = 255;
+
+    private static final String FINGERPRINT_ALGO = "HmacSHA256";
+
+    // Cipher не потокобезопасен, но дорог в получении: держим по экземпляру на поток и
+    // переинициализируем ключом и IV на каждую операцию
+    private static final ThreadLocal<Cipher> CIPHER = ThreadLocal.withInitial(() -> {
         try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            this.key = digest.digest(secret.getBytes(StandardCharsets.UTF_8));
+            return Cipher.getInstance(ALGO);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES-GCM is not available", e);
+        }
+    });
+
+    private final SecretKeySpec[] keys = new SecretKeySpec[MAX_KEY_ID + 1];
+    private final int activeKeyId;
+    private final SecureRandom random = new SecureRandom();
+    private final ThreadLocal<Mac> fingerprintMac;
+
+    public CryptoUtil(CardKeyProperties properties) {
+        this.keys[LEGACY_KEY_ID] = legacyKey(properties.getLegacySecret());
+        for (Map.Entry<Integer, String> entry : properties.getKeys().entrySet()) {
+            int id = entry.getKey();
+            if (id <= LEGACY_KEY_ID || id > MAX_KEY_ID) {
+                throw new IllegalStateException("id ключа карт должен быть от 1 до " + MAX_KEY_ID + ": " + id);
+            }
+            byte[] raw = Base64.getDecoder().decode(entry.getValue());
+            if (raw.length != 16 && raw.length != 24 && raw.length != 32) {
+                throw new IllegalStateException("Ключ карт " + id + " должен быть длиной 16, 24 или 32 байта");
+            }
+            this.keys[id] = new SecretKeySpec(raw, "AES");
+        }
+        int active = properties.getActiveKeyId();
+        if (active < LEGACY_KEY_ID || active > MAX_KEY_ID || keys[active] == null) {
+            throw new IllegalStateException("Активный ключ карт " + active + " не задан");
+        }
+        this.activeKeyId = active;
+
+        byte[] fingerprintKey = Base64.getDecoder().decode(properties.getFingerprintKey());
+        if (fingerprintKey.length < 32) {
+            throw new IllegalStateException("Ключ отпечатков карт должен быть не короче 32 байт");
+        }
+        this.fingerprintMac = macFor(new SecretKeySpec(fingerprintKey, FINGERPRINT_ALGO));
+    }
+
+    public int getActiveKeyId() {
+        return activeKeyId;
+    }
+
+    /**
+     * true, если конверт зашифрован не активным ключом и его нужно перешифровать.
+     */
+    public boolean needsRotation(byte[] envelope) {
+        return keyId(envelope) != activeKeyId;
+    }
+
+    /**
+     * Расшифровывает конверт ключом, указанным в его заголовке, и шифрует заново активным ключом.
+     */
+    public byte[] reencrypt(byte[] envelope) {
+        return encryptToBytes(decryptFromBytes(envelope));
+    }
+
+    /**
+     * Детерминированный отпечаток номера карты (HMAC-SHA256 по цифрам номера) для поиска по индексу.
+     * Не меняется при ротации ключей шифрования, поэтому ключ отпечатков задаётся отдельно.
+     */
+    public byte[] fingerprint(String cardNumber) {
+        byte[] digits = cardNumber.replaceAll("\\D", "").getBytes(StandardCharsets.US_ASCII);
+        return fingerprintMac.get().doFinal(digits);
+    }
+
+    /**
+     * Шифрует значение в бинарный конверт для колонки bytea.
+     */
+    public byte[] encryptToBytes(String plain) {
+        try {
+            byte[] out = seal(CIPHER.get(), keys[activeKeyId], plain, HEADER_LEN_BYTE);
+            out[0] = FORMAT_V1;
+            out[1] = (byte) activeKeyId;
+            return out;
         } catch (Exception e) {
-            throw new RuntimeException("Failed to init key", e);
+            throw new RuntimeException(e);
         }
     }
 
-    public String encrypt(String plain) {
+    public String decryptFromBytes(byte[] envelope) {
+        SecretKeySpec key = keyFor(envelope);
         try {
-            byte[] iv = new byte[IV_LEN_BYTE];
-            new SecureRandom().nextBytes(iv);
-            Cipher cipher = Cipher.getInstance(ALGO);
-            GCMParameterSpec spec = new GCMParameterSpec(TAGLEN_BIT, iv);
-            SecretKeySpec keySpec = new SecretKeySpec(key, "AES");
-            cipher.init(Cipher.ENCRYPT_MODE, keySpec, spec);
-            byte[] encrypted = cipher.doFinal(plain.getBytes());
-            byte[] combined = new byte[iv.length + encrypted.length];
-            System.arraycopy(iv, 0, combined, 0, iv.length);
-            System.arraycopy(encrypted, 0, combined, iv.length, encrypted.length);
-            return Base64.getEncoder().encodeToString(combined);
+            return open(CIPHER.get(), key, envelope, HEADER_LEN_BYTE, envelope.length - HEADER_LEN_BYTE);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Шифрует пачку значений активным ключом; Cipher потока берётся один раз на всю пачку.
+     */
+    public List<byte[]> encryptAll(List<String> plains) {
+        Cipher cipher = CIPHER.get();
+        SecretKeySpec key = keys[activeKeyId];
+        List<byte[]> result = new ArrayList<>(plains.size());
+        try {
+            for (String plain : plains) {
+                byte[] out = seal(cipher, key, plain, HEADER_LEN_BYTE);
+                out[0] = FORMAT_V1;
+                out[1] = (byte) activeKeyId;
+                result.add(out);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        return result;
+    }
+
+    /**
+     * Расшифровывает пачку конвертов, каждый ключом из своего заголовка. Порядок результата совпадает с входным.
+     */
+    public List<String> decryptAll(List<byte[]> envelopes) {
+        Cipher cipher = CIPHER.get();
+        List<String> result = new ArrayList<>(envelopes.size());
+        for (byte[] envelope : envelopes) {
+            SecretKeySpec key = keyFor(envelope);
+            try {
+                result.add(open(cipher, key, envelope, HEADER_LEN_BYTE, envelope.length - HEADER_LEN_BYTE));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Переупаковывает Base64-шифртекст прежнего формата в бинарный конверт без расшифровки:
+     * меняется только заголовок и кодировка, id ключа — LEGACY_KEY_ID.
+     */
+    public static byte[] toEnvelope(String legacyCipherText) {
+        byte[] combined = Base64.getDecoder().decode(legacyCipherText);
+        if (combined.length < IV_LEN_BYTE + TAG_LEN_BYTE) {
+            throw new IllegalArgumentException("Шифртекст короче IV и тега");
+        }
+        byte[] out = new byte[HEADER_LEN_BYTE + combined.length];
+        out[0] = FORMAT_V1;
+        out[1] = LEGACY_KEY_ID;
+        System.arraycopy(combined, 0, out, HEADER_LEN_BYTE, combined.length);
+        return out;
+    }
+
+    /**
+     * Читает Base64-шифртекст прежнего формата (ключ LEGACY_KEY_ID) из строк, которые ещё не перенёс
+     * CardCipherMigrationJob. Новые данные в этом формате не пишутся.
+     */
     public String decrypt(String cipherText) {
         try {
             byte[] combined = Base64.getDecoder().decode(cipherText);
-            byte[] iv = new byte[IV_LEN_BYTE];
-            System.arraycopy(combined, 0, iv, 0, iv.length);
-            byte[] enc = new byte[combined.length - iv.length];
-            System.arraycopy(combined, iv.length, enc, 0, enc.length);
-
-            Cipher cipher = Cipher.getInstance(ALGO);
-            GCMParameterSpec spec = new GCMParameterSpec(TAGLEN_BIT, iv);
-            SecretKeySpec keySpec = new SecretKeySpec(key, "AES");
-            cipher.init(Cipher.DECRYPT_MODE, keySpec, spec);
-
-            byte[] decrypted = cipher.doFinal(enc);
-            return new String(decrypted, StandardCharsets.UTF_8);
+            return open(CIPHER.get(), keys[LEGACY_KEY_ID], combined, 0, combined.length);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
+    // Результат: [header] || IV || ciphertext || tag, шифрование пишет сразу в итоговый массив.
+    // Заголовок заполняет вызывающий код
+    private byte[] seal(Cipher cipher, SecretKeySpec keySpec, String plain, int headerLen)
+            throws GeneralSecurityException {
+        byte[] input = plain.getBytes(StandardCharsets.UTF_8);
+        byte[] iv = new byte[IV_LEN_BYTE];
+        random.nextBytes(iv);
+        cipher.init(Cipher.ENCRYPT_MODE, keySpec, new GCMParameterSpec(TAGLEN_BIT, iv));
+
+        byte[] out = new byte[headerLen + IV_LEN_BYTE + input.length + TAG_LEN_BYTE];
+        System.arraycopy(iv, 0, out, headerLen, IV_LEN_BYTE);
+        cipher.doFinal(input, 0, input.length, out, headerLen + IV_LEN_BYTE);
+        return out;
+    }
+
+    // IV и шифртекст читаются по смещениям из исходного буфера, без промежуточных копий
+    private static String open(Cipher cipher, SecretKeySpec keySpec, byte[] buf, int offset, int length)
+            throws GeneralSecurityException {
+        cipher.init(Cipher.DECRYPT_MODE, keySpec, new GCMParameterSpec(TAGLEN_BIT, buf, offset, IV_LEN_BYTE));
+        byte[] decrypted = cipher.doFinal(buf, offset + IV_LEN_BYTE, length - IV_LEN_BYTE);
+        return new String(decrypted, StandardCharsets.UTF_8);
+    }
+
+    private SecretKeySpec keyFor(byte[] envelope) {
+        SecretKeySpec key = keys[keyId(envelope)];
+        if (key == null) {
+            throw new IllegalArgumentException("Неизвестный id ключа: " + keyId(envelope));
+        }
+        return key;
+    }
+
+    private static int keyId(byte[] envelope) {
+        if (envelope.length < HEADER_LEN_BYTE + IV_LEN_BYTE + TAG_LEN_BYTE) {
+            throw new IllegalArgumentException("Шифртекст короче заголовка, IV и тега");
+        }
+        if (envelope[0] != FORMAT_V1) {
+            throw new IllegalArgumentException("Неизвестная версия формата шифртекста: " + envelope[0]);
+        }
+        return envelope[1] & 0xFF;
+    }
+
+    private static SecretKeySpec legacyKey(String secret) {
+        return new SecretKeySpec(sha256(secret), "AES");
+    }
+
+    private static byte[] sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return digest.digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to init key", e);
+        }
+    }
+
+    // Mac, как и Cipher, не потокобезопасен: по экземпляру на поток, doFinal сбрасывает состояние
+    private static ThreadLocal<Mac> macFor(SecretKeySpec key) {
+        return ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(FINGERPRINT_ALGO);
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HmacSHA256 is not available", e);
+            }
+        });
+    }
+
     public static String maskCardNumber(String plainNumber) {
+        return maskLastFour(lastFour(plainNumber));
+    }
+
+    public static String lastFour(String plainNumber) {
         String digits = plainNumber.replaceAll("\\D", "");
-        if (digits.length() < 4) return "****";
-        String last4 = digits.substring(digits.length()-4);
+        if (digits.length() < 4) return digits;
+        return digits.substring(digits.length()-4);
+    }
+
+    public static String maskLastFour(String last4) {
+        if (last4.length() < 4) return "****";
         return "**** **** **** " + last4;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,164 @@
+package com.denos.bankcards.benchmark;
+
+import com.denos.bankcards.config.CardKeyProperties;
+import com.denos.bankcards.util.CryptoUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение текущего CryptoUtil с прежней реализацией (новый Cipher, SecretKeySpec и SecureRandom
+ * на каждый вызов). Запуск с профилировщиком аллокаций:
+ * <pre>
+ * ./mvnw -q test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.denos.bankcards.benchmark.CryptoUtilBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CryptoUtilBenchmark {
+
+    private static final String SECRET = "benchmark-secret-key-for-card-numbers";
+    private static final int BATCH = 100;
+
+    private CryptoUtil current;
+    private LegacyCryptoUtil legacy;
+    private String cipherText;
+    private List<String> plains;
+    private List<String> cipherTexts;
+    private List<byte[]> envelopes;
+
+    @Setup
+    public void setUp() {
+        CardKeyProperties properties = new CardKeyProperties();
+        properties.setLegacySecret(SECRET);
+        properties.setActiveKeyId(1);
+        properties.setKeys(Map.of(1, "8WM7ng3LHqVZI5TXsee3pE0cI1giAebm1be05+Fk9eA="));
+        properties.setFingerprintKey("kHL1IEpQPnq0kRCYU3Y5zCeHMjoBj+T16ubpbmFXA00=");
+        current = new CryptoUtil(properties);
+        legacy = new LegacyCryptoUtil(SECRET);
+        cipherText = legacy.encrypt("4111111111111111");
+        plains = new ArrayList<>(BATCH);
+        cipherTexts = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            String plain = String.format("4111%012d", i);
+            plains.add(plain);
+            cipherTexts.add(legacy.encrypt(plain));
+        }
+        envelopes = current.encryptAll(plains);
+    }
+
+    @Benchmark
+    public byte[] encryptCurrent() {
+        return current.encryptToBytes("4111111111111111");
+    }
+
+    @Benchmark
+    public String encryptLegacy() {
+        return legacy.encrypt("4111111111111111");
+    }
+
+    @Benchmark
+    public String decryptCurrent() {
+        return current.decrypt(cipherText);
+    }
+
+    @Benchmark
+    public String decryptLegacy() {
+        return legacy.decrypt(cipherText);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<String> decryptAllCurrent() {
+        return current.decryptAll(envelopes);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<String> decryptAllLegacy() {
+        List<String> result = new ArrayList<>(BATCH);
+        for (String c : cipherTexts) {
+            result.add(legacy.decrypt(c));
+        }
+        return result;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<byte[]> encryptAllCurrent() {
+        return current.encryptAll(plains);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(CryptoUtilBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build();
+        new Runner(options).run();
+    }
+
+    /**
+     * Реализация CryptoUtil до переиспользования Cipher и ключа, оставлена только для сравнения.
+     */
+    static class LegacyCryptoUtil {
+        private final byte[] key;
+
+        LegacyCryptoUtil(String secret) {
+            try {
+                key = MessageDigest.getInstance("SHA-256").digest(secret.getBytes(StandardCharsets.UTF_8));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        String encrypt(String plain) {
+            try {
+                byte[] iv = new byte[12];
+                new SecureRandom().nextBytes(iv);
+                Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+                cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new GCMParameterSpec(128, iv));
+                byte[] encrypted = cipher.doFinal(plain.getBytes());
+                byte[] combined = new byte[iv.length + encrypted.length];
+                System.arraycopy(iv, 0, combined, 0, iv.length);
+                System.arraycopy(encrypted, 0, combined, iv.length, encrypted.length);
+                return Base64.getEncoder().encodeToString(combined);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        String decrypt(String cipherText) {
+            try {
+                byte[] combined = Base64.getDecoder().decode(cipherText);
+                byte[] iv = new byte[12];
+                System.arraycopy(combined, 0, iv, 0, iv.length);
+                byte[] enc = new byte[combined.length - iv.length];
+                System.arraycopy(combined, iv.length, enc, 0, enc.length);
+                Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+                cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"), new GCMParameterSpec(128, iv));
+                return new String(cipher.doFinal(enc), StandardCharsets.UTF_8);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
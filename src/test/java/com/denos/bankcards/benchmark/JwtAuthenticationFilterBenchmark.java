@@ -0,0 +1,139 @@
+package com.denos.bankcards.benchmark;
+
+import com.denos.bankcards.enums.PrincipalMode;
+import com.denos.bankcards.security.JwtAuthenticationFilter;
+import com.denos.bankcards.security.JwtSigningKey;
+import com.denos.bankcards.security.JwtUtil;
+import com.denos.bankcards.security.UserSecurityEpochs;
+import com.denos.bankcards.service.CustomUserDetailsService;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.security.Key;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Фильтр JWT с кэшем проверенных токенов против прежнего поведения (новый парсер и проверка подписи
+ * на каждый запрос). Загрузка пользователя заглушена, чтобы измерялась только работа с токеном;
+ * в реальном режиме DATABASE к ней добавляются запросы к users и user_roles, которых нет в режиме CLAIMS.
+ * <pre>
+ * ./mvnw -q test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.denos.bankcards.benchmark.JwtAuthenticationFilterBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtAuthenticationFilterBenchmark {
+
+    private static final String SECRET = "benchmark-secret-key-for-jwt-signing-32-bytes";
+    private static final FilterChain NO_OP_CHAIN = (request, response) -> { };
+
+    private JwtAuthenticationFilter cachedFilter;
+    private JwtAuthenticationFilter legacyFilter;
+    private JwtAuthenticationFilter claimsFilter;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        JwtUtil cached = new JwtUtil(JwtSigningKey.hmac(SECRET), 3_600_000, "bank-rest", 10_000, new SimpleMeterRegistry());
+        JwtUtil legacy = new LegacyJwtUtil(SECRET);
+        StubUserDetailsService userDetailsService = new StubUserDetailsService();
+        UserSecurityEpochs securityEpochs = new UserSecurityEpochs(null, 3_600_000);
+        cachedFilter = new JwtAuthenticationFilter(cached, userDetailsService, securityEpochs, PrincipalMode.DATABASE);
+        legacyFilter = new JwtAuthenticationFilter(legacy, userDetailsService, securityEpochs, PrincipalMode.DATABASE);
+        claimsFilter = new JwtAuthenticationFilter(cached, userDetailsService, securityEpochs, PrincipalMode.CLAIMS);
+        token = cached.generateToken("user1", List.of("ROLE_USER"));
+    }
+
+    @Benchmark
+    public MockHttpServletResponse filterCached() throws Exception {
+        return filter(cachedFilter);
+    }
+
+    @Benchmark
+    public MockHttpServletResponse filterLegacy() throws Exception {
+        return filter(legacyFilter);
+    }
+
+    @Benchmark
+    public MockHttpServletResponse filterClaims() throws Exception {
+        return filter(claimsFilter);
+    }
+
+    private MockHttpServletResponse filter(JwtAuthenticationFilter filter) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/cards");
+        request.addHeader("Authorization", "Bearer " + token);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        try {
+            filter.doFilter(request, response, NO_OP_CHAIN);
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+        return response;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(JwtAuthenticationFilterBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build();
+        new Runner(options).run();
+    }
+
+    /**
+     * Прежнее поведение JwtUtil: парсер собирается и подпись проверяется на каждый вызов.
+     */
+    static class LegacyJwtUtil extends JwtUtil {
+        private final Key key;
+
+        LegacyJwtUtil(String secret) {
+            super(JwtSigningKey.hmac(secret), 3_600_000, "bank-rest", 1, new SimpleMeterRegistry());
+            this.key = Keys.hmacShaKeyFor(secret.getBytes());
+        }
+
+        @Override
+        public Claims parseClaims(String token) {
+            return Jwts.parserBuilder()
+                    .setSigningKey(key)
+                    .build()
+                    .parseClaimsJws(token)
+                    .getBody();
+        }
+    }
+
+    static class StubUserDetailsService extends CustomUserDetailsService {
+        private final UserDetails user = User.builder()
+                .username("user1")
+                .password("password")
+                .authorities(List.of(new SimpleGrantedAuthority("ROLE_USER")))
+                .build();
+
+        StubUserDetailsService() {
+            super(null, new SimpleMeterRegistry(), 1, 1);
+        }
+
+        @Override
+        public UserDetails loadUserByUsername(String username) {
+            return user;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.denos.bankcards.benchmark;
+
+import com.denos.bankcards.security.JwtSigningKey;
+import com.denos.bankcards.security.JwtUtil;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость выпуска и проверки токена при подписи HS256 и ES256. Проверка идёт мимо кэша JwtUtil,
+ * то есть это цена первого запроса с новым токеном и цена проверки на стороне другого сервиса.
+ * <pre>
+ * ./mvnw -q test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.denos.bankcards.benchmark.JwtSigningBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtSigningBenchmark {
+
+    private static final String SECRET = "benchmark-secret-key-for-jwt-signing-32-bytes";
+    private static final List<String> ROLES = List.of("ROLE_USER");
+
+    @Param({"HS256", "ES256"})
+    private String algorithm;
+
+    private JwtUtil jwtUtil;
+    private String token;
+
+    @Setup
+    public void setUp() throws Exception {
+        JwtSigningKey signingKey;
+        if ("ES256".equals(algorithm)) {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec("secp256r1"));
+            signingKey = JwtSigningKey.es256(generator.generateKeyPair(), "benchmark");
+        } else {
+            signingKey = JwtSigningKey.hmac(SECRET);
+        }
+        jwtUtil = new JwtUtil(signingKey, 3_600_000, "bank-rest", 1, new SimpleMeterRegistry());
+        token = jwtUtil.generateToken("user1", ROLES);
+    }
+
+    @Benchmark
+    public String sign() {
+        return jwtUtil.generateToken("user1", ROLES);
+    }
+
+    @Benchmark
+    public Jws<Claims> verify() {
+        return jwtUtil.validateToken(token);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(JwtSigningBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,93 @@
+package com.denos.bankcards.config;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReplicaFallbackDataSourceTest {
+
+    @Mock
+    private DataSource replica;
+
+    @Mock
+    private DataSource primary;
+
+    @Mock
+    private Connection replicaConnection;
+
+    @Mock
+    private Connection primaryConnection;
+
+    @Test
+    void getConnection_ReplicaHealthy_UsesReplica() throws SQLException {
+        // Arrange
+        when(replica.getConnection()).thenReturn(replicaConnection);
+        ReplicaFallbackDataSource dataSource = new ReplicaFallbackDataSource(replica, primary, 30000);
+
+        // Act
+        Connection result = dataSource.getConnection();
+
+        // Assert
+        assertSame(replicaConnection, result);
+        assertTrue(dataSource.isReplicaAvailable());
+        verifyNoInteractions(primary);
+    }
+
+    @Test
+    void getConnection_ReplicaDown_FallsBackAndSkipsReplica() throws SQLException {
+        // Arrange
+        when(replica.getConnection()).thenThrow(new SQLTransientConnectionException("replica - Connection is not available"));
+        when(primary.getConnection()).thenReturn(primaryConnection);
+        ReplicaFallbackDataSource dataSource = new ReplicaFallbackDataSource(replica, primary, 30000);
+
+        // Act
+        Connection first = dataSource.getConnection();
+        Connection second = dataSource.getConnection();
+
+        // Assert
+        assertSame(primaryConnection, first);
+        assertSame(primaryConnection, second);
+        assertFalse(dataSource.isReplicaAvailable());
+        verify(replica, times(1)).getConnection();
+    }
+
+    @Test
+    void getConnection_ReplicaRecovered_UsesReplicaAgain() throws SQLException {
+        // Arrange
+        when(replica.getConnection())
+                .thenThrow(new SQLTransientConnectionException("replica - Connection is not available"))
+                .thenReturn(replicaConnection);
+        when(primary.getConnection()).thenReturn(primaryConnection);
+        ReplicaFallbackDataSource dataSource = new ReplicaFallbackDataSource(replica, primary, 0);
+
+        // Act
+        Connection first = dataSource.getConnection();
+        Connection second = dataSource.getConnection();
+
+        // Assert
+        assertSame(primaryConnection, first);
+        assertSame(replicaConnection, second);
+    }
+
+    @Test
+    void getConnection_BothDown_ThrowsPrimaryError() throws SQLException {
+        // Arrange
+        SQLException primaryError = new SQLException("primary down");
+        when(replica.getConnection()).thenThrow(new SQLException("replica down"));
+        when(primary.getConnection()).thenThrow(primaryError);
+        ReplicaFallbackDataSource dataSource = new ReplicaFallbackDataSource(replica, primary, 30000);
+
+        // Act & Assert
+        assertSame(primaryError, assertThrows(SQLException.class, dataSource::getConnection));
+    }
+}
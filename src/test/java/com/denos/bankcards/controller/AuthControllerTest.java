@@ -2,21 +2,27 @@ package com.denos.bankcards.controller;
 
 import com.denos.bankcards.dto.AuthRequest;
 import com.denos.bankcards.dto.AuthResponse;
-import com.denos.bankcards.entity.Role;
-import com.denos.bankcards.entity.User;
-import com.denos.bankcards.enums.RoleType;
-import com.denos.bankcards.repository.UserRepository;
+import com.denos.bankcards.dto.RefreshRequest;
+import com.denos.bankcards.exception.InvalidRefreshTokenException;
+import com.denos.bankcards.exception.TooManyAttemptsException;
+import com.denos.bankcards.security.ClientIpResolver;
 import com.denos.bankcards.security.JwtUtil;
+import com.denos.bankcards.security.LoginAttemptThrottle;
+import com.denos.bankcards.service.CustomUserDetailsService;
+import com.denos.bankcards.service.RefreshTokenService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
-import java.util.Optional;
-import java.util.Set;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -25,29 +31,33 @@ import static org.mockito.Mockito.*;
 @ExtendWith(MockitoExtension.class)
 class AuthControllerTest {
 
-    @Mock
-    private UserRepository userRepository;
-
     @Mock
     private PasswordEncoder passwordEncoder;
 
     @Mock
     private JwtUtil jwtUtil;
 
+    @Mock
+    private LoginAttemptThrottle loginThrottle;
+
+    @Spy
+    private ClientIpResolver clientIpResolver = new ClientIpResolver("10.0.0.0/8");
+
+    @Mock
+    private RefreshTokenService refreshTokenService;
+
+    @Mock
+    private CustomUserDetailsService userDetailsService;
+
     @InjectMocks
     private AuthController authController;
 
-    private User testUser;
+    private MockHttpServletRequest httpRequest;
 
     @BeforeEach
     void setUp() {
-        testUser = User.builder()
-                .id(1L)
-                .username("testuser")
-                .password("encodedPassword")
-                .enabled(true)
-                .userRoles(Set.of(new Role(1L, RoleType.ROLE_USER)))
-                .build();
+        httpRequest = new MockHttpServletRequest();
+        httpRequest.setRemoteAddr("10.0.0.1");
     }
 
     @Test
@@ -57,19 +67,23 @@ class AuthControllerTest {
         request.setUsername("testuser");
         request.setPassword("password");
 
-        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(testUser));
+        when(userDetailsService.loadUserByUsername("testuser")).thenReturn(userDetails(true));
         when(passwordEncoder.matches("password", "encodedPassword")).thenReturn(true);
-        when(jwtUtil.generateToken(any(), any())).thenReturn("test-token");
+        when(jwtUtil.generateToken("testuser", List.of("ROLE_USER"))).thenReturn("test-token");
+        when(refreshTokenService.issue("testuser")).thenReturn("refresh-token");
 
         // Act
-        AuthResponse response = authController.login(request);
+        AuthResponse response = authController.login(request, httpRequest);
 
         // Assert
         assertNotNull(response);
         assertEquals("test-token", response.getToken());
-        verify(userRepository, times(1)).findByUsername("testuser");
+        assertEquals("refresh-token", response.getRefreshToken());
+        verify(userDetailsService, times(1)).loadUserByUsername("testuser");
         verify(passwordEncoder, times(1)).matches("password", "encodedPassword");
         verify(jwtUtil, times(1)).generateToken(any(), any());
+        verify(loginThrottle, times(1)).acquire("testuser", "10.0.0.1");
+        verify(loginThrottle, times(1)).succeeded("testuser");
     }
 
     @Test
@@ -79,11 +93,11 @@ class AuthControllerTest {
         request.setUsername("wronguser");
         request.setPassword("password");
 
-        when(userRepository.findByUsername("wronguser")).thenReturn(Optional.empty());
+        when(userDetailsService.loadUserByUsername("wronguser")).thenThrow(new UsernameNotFoundException("User not found"));
 
         // Act & Assert
-        assertThrows(RuntimeException.class, () -> authController.login(request));
-        verify(userRepository, times(1)).findByUsername("wronguser");
+        RuntimeException ex = assertThrows(RuntimeException.class, () -> authController.login(request, httpRequest));
+        assertEquals("Invalid credentials", ex.getMessage());
         verify(passwordEncoder, never()).matches(any(), any());
     }
 
@@ -94,12 +108,106 @@ class AuthControllerTest {
         request.setUsername("testuser");
         request.setPassword("wrongpassword");
 
-        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(testUser));
+        when(userDetailsService.loadUserByUsername("testuser")).thenReturn(userDetails(true));
         when(passwordEncoder.matches("wrongpassword", "encodedPassword")).thenReturn(false);
 
         // Act & Assert
-        assertThrows(RuntimeException.class, () -> authController.login(request));
-        verify(userRepository, times(1)).findByUsername("testuser");
+        assertThrows(RuntimeException.class, () -> authController.login(request, httpRequest));
         verify(passwordEncoder, times(1)).matches("wrongpassword", "encodedPassword");
+        verify(loginThrottle, never()).succeeded(any());
+    }
+
+    @Test
+    void login_DisabledUser_RejectsWithoutIssuingTokens() {
+        // Arrange
+        AuthRequest request = new AuthRequest();
+        request.setUsername("testuser");
+        request.setPassword("password");
+
+        when(userDetailsService.loadUserByUsername("testuser")).thenReturn(userDetails(false));
+        when(passwordEncoder.matches("password", "encodedPassword")).thenReturn(true);
+
+        // Act & Assert
+        RuntimeException ex = assertThrows(RuntimeException.class, () -> authController.login(request, httpRequest));
+        assertEquals("Invalid credentials", ex.getMessage());
+        verify(loginThrottle, never()).succeeded(any());
+        verifyNoInteractions(jwtUtil, refreshTokenService);
+    }
+
+    @Test
+    void login_Throttled_RejectsBeforeCheckingPassword() {
+        // Arrange
+        AuthRequest request = new AuthRequest();
+        request.setUsername("testuser");
+        request.setPassword("password");
+        doThrow(new TooManyAttemptsException("Слишком много попыток входа, повторите позже"))
+                .when(loginThrottle).acquire("testuser", "10.0.0.1");
+
+        // Act & Assert
+        assertThrows(TooManyAttemptsException.class, () -> authController.login(request, httpRequest));
+        verifyNoInteractions(userDetailsService, passwordEncoder, jwtUtil);
+    }
+
+    @Test
+    void login_BehindTrustedProxy_ThrottlesByForwardedClientIp() {
+        // Arrange: два клиента приходят через один балансировщик 10.0.0.1
+        AuthRequest request = new AuthRequest();
+        request.setUsername("testuser");
+        request.setPassword("password");
+        when(userDetailsService.loadUserByUsername("testuser")).thenThrow(new UsernameNotFoundException("User not found"));
+        MockHttpServletRequest first = new MockHttpServletRequest();
+        first.setRemoteAddr("10.0.0.1");
+        first.addHeader("X-Forwarded-For", "203.0.113.7");
+        MockHttpServletRequest second = new MockHttpServletRequest();
+        second.setRemoteAddr("10.0.0.1");
+        second.addHeader("X-Forwarded-For", "198.51.100.4");
+
+        // Act
+        assertThrows(RuntimeException.class, () -> authController.login(request, first));
+        assertThrows(RuntimeException.class, () -> authController.login(request, second));
+
+        // Assert
+        verify(loginThrottle, times(1)).acquire("testuser", "203.0.113.7");
+        verify(loginThrottle, times(1)).acquire("testuser", "198.51.100.4");
+        verify(loginThrottle, never()).acquire("testuser", "10.0.0.1");
+    }
+
+    @Test
+    void refresh_ValidToken_ReturnsNewPairWithoutPasswordCheck() {
+        // Arrange
+        RefreshRequest request = new RefreshRequest();
+        request.setRefreshToken("refresh-1");
+        when(refreshTokenService.rotate("refresh-1"))
+                .thenReturn(new RefreshTokenService.Rotation("testuser", "refresh-2"));
+        when(userDetailsService.loadUserByUsername("testuser")).thenReturn(userDetails(true));
+        when(jwtUtil.generateToken("testuser", List.of("ROLE_USER"))).thenReturn("new-token");
+
+        // Act
+        AuthResponse response = authController.refresh(request);
+
+        // Assert
+        assertEquals("new-token", response.getToken());
+        assertEquals("refresh-2", response.getRefreshToken());
+        verifyNoInteractions(passwordEncoder, loginThrottle);
+    }
+
+    @Test
+    void refresh_DisabledUser_RevokesTokensAndThrows() {
+        // Arrange
+        RefreshRequest request = new RefreshRequest();
+        request.setRefreshToken("refresh-1");
+        when(refreshTokenService.rotate("refresh-1"))
+                .thenReturn(new RefreshTokenService.Rotation("testuser", "refresh-2"));
+        when(userDetailsService.loadUserByUsername("testuser")).thenReturn(userDetails(false));
+
+        // Act & Assert
+        assertThrows(InvalidRefreshTokenException.class, () -> authController.refresh(request));
+        verify(refreshTokenService, times(1)).revokeAll("testuser");
+        verify(jwtUtil, never()).generateToken(any(), any());
+    }
+
+    private static org.springframework.security.core.userdetails.User userDetails(boolean enabled) {
+        return new org.springframework.security.core.userdetails.User("testuser", "encodedPassword", enabled,
+                true, true, true, List.of(new SimpleGrantedAuthority("ROLE_USER")));
     }
-}
\ No newline at end of file
+}
@@ -1,12 +1,17 @@
 package com.denos.bankcards.controller;
 
 import com.denos.bankcards.dto.CardDto;
+import com.denos.bankcards.dto.CardLookupRequest;
 import com.denos.bankcards.dto.CardRequest;
+import com.denos.bankcards.dto.CardSearchFilter;
+import com.denos.bankcards.dto.CursorPage;
 import com.denos.bankcards.entity.Card;
 import com.denos.bankcards.entity.User;
 import com.denos.bankcards.enums.CardStatus;
+import com.denos.bankcards.exception.DuplicateCardException;
 import com.denos.bankcards.repository.CardRepository;
 import com.denos.bankcards.repository.UserRepository;
+import com.denos.bankcards.repository.projection.CardRow;
 import com.denos.bankcards.util.CryptoUtil;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -14,15 +19,22 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 
 import java.math.BigDecimal;
+import java.time.YearMonth;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -81,13 +93,85 @@ class CardControllerTest {
                 .build();
     }
 
+    @Test
+    void getAllCards_MoreRowsThanLimit_ReturnsCursorToNextPage() {
+        // Arrange
+        testCard.setPanLast4("3456");
+        Card second = Card.builder().id(2L).panLast4("7890").ownerName("PETYA IVANOV").status(CardStatus.ACTIVE).build();
+        Card third = Card.builder().id(3L).panLast4("1111").ownerName("PETYA IVANOV").status(CardStatus.ACTIVE).build();
+        when(cardRepository.findRowsAfter(0L, null, null, Limit.of(3))).thenReturn(List.of(row(testCard), row(second), row(third)));
+
+        // Act
+        CursorPage<CardDto> page = cardController.getAllCards(null, 2, null, null);
+
+        // Assert
+        assertEquals(List.of(1L, 2L), page.getItems().stream().map(CardDto::getId).toList());
+        assertEquals(2L, CursorPage.decodeCursor(page.getNextCursor()));
+        verifyNoInteractions(cryptoUtil);
+    }
+
+    @Test
+    void getAllCards_LastPageWithFilters_HasNoCursor() {
+        // Arrange
+        testCard.setPanLast4("3456");
+        String cursor = CursorPage.encodeCursor(0L);
+        when(cardRepository.findRowsAfter(0L, CardStatus.ACTIVE, 1L, Limit.of(51))).thenReturn(List.of(row(testCard)));
+
+        // Act
+        CursorPage<CardDto> page = cardController.getAllCards(cursor, 50, CardStatus.ACTIVE, 1L);
+
+        // Assert
+        assertEquals(1, page.getItems().size());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void getAllCards_InvalidLimitOrCursor_Throws() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () ->
+                cardController.getAllCards(null, CardController.MAX_PAGE_SIZE + 1, null, null));
+        assertThrows(IllegalArgumentException.class, () -> cardController.getAllCards("not-a-cursor!", 50, null, null));
+        verifyNoInteractions(cardRepository);
+    }
+
+    @Test
+    void searchCards_WithFilters_ReturnsPageFromSpecification() {
+        // Arrange
+        testCard.setPanLast4("3456");
+        CardSearchFilter filter = new CardSearchFilter();
+        filter.setStatus(CardStatus.ACTIVE);
+        filter.setExpiresFrom(YearMonth.of(2025, 1));
+        filter.setExpiresTo(YearMonth.of(2025, 12));
+        filter.setOwnerPrefix("petya");
+        when(cardRepository.findBy(any(Specification.class), any())).thenReturn(List.of(testCard));
+
+        // Act
+        CursorPage<CardDto> page = cardController.searchCards(filter, null, 50);
+
+        // Assert
+        assertEquals(1, page.getItems().size());
+        assertEquals("**** **** **** 3456", page.getItems().get(0).getMaskedNumber());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void searchCards_ExpiryRangeReversed_Throws() {
+        // Arrange
+        CardSearchFilter filter = new CardSearchFilter();
+        filter.setExpiresFrom(YearMonth.of(2026, 1));
+        filter.setExpiresTo(YearMonth.of(2025, 12));
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> cardController.searchCards(filter, null, 50));
+        verifyNoInteractions(cardRepository);
+    }
+
     @Test
     void getMyCards_UserCards_ReturnsPage() {
         // Arrange
-        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(testUser));
-        when(cardRepository.findByUser(testUser, Pageable.unpaged()))
-                .thenReturn(new PageImpl<>(List.of(testCard)));
-        when(cryptoUtil.decrypt("encryptedCardNumber")).thenReturn("1234567890123456");
+        testCard.setPanLast4("3456");
+        when(cardRepository.findRowsByUsername("testuser", Pageable.unpaged()))
+                .thenReturn(new PageImpl<>(List.of(row(testCard))));
 
         // Act
         Page<CardDto> result = cardController.getMyCards(userDetails, Pageable.unpaged());
@@ -95,11 +179,44 @@ class CardControllerTest {
         // Assert
         assertNotNull(result);
         assertEquals(1, result.getTotalElements());
-        verify(userRepository, times(1)).findByUsername("testuser");
-        verify(cardRepository, times(1)).findByUser(testUser, Pageable.unpaged());
+        assertEquals("**** **** **** 3456", result.getContent().get(0).getMaskedNumber());
+        verify(cardRepository, times(1)).findRowsByUsername("testuser", Pageable.unpaged());
+        verifyNoInteractions(userRepository, cryptoUtil);
+    }
+
+    @Test
+    void getMyCards_CardNotBackfilled_FallsBackToDecrypt() {
+        // Arrange
+        when(cardRepository.findRowsByUsername("testuser", Pageable.unpaged()))
+                .thenReturn(new PageImpl<>(List.of(row(testCard))));
+        when(cryptoUtil.decrypt("encryptedCardNumber")).thenReturn("1234567890123456");
+
+        // Act
+        Page<CardDto> result = cardController.getMyCards(userDetails, Pageable.unpaged());
+
+        // Assert
+        assertEquals("**** **** **** 3456", result.getContent().get(0).getMaskedNumber());
         verify(cryptoUtil, times(1)).decrypt("encryptedCardNumber");
     }
 
+    @Test
+    void getMyCards_BinaryCipher_DecryptsEnvelope() {
+        // Arrange
+        byte[] envelope = {1, 0, 42};
+        testCard.setCardNumberEncrypted(null);
+        testCard.setCardNumberCipher(envelope);
+        when(cardRepository.findRowsByUsername("testuser", Pageable.unpaged()))
+                .thenReturn(new PageImpl<>(List.of(row(testCard))));
+        when(cryptoUtil.decryptFromBytes(envelope)).thenReturn("1234567890123456");
+
+        // Act
+        Page<CardDto> result = cardController.getMyCards(userDetails, Pageable.unpaged());
+
+        // Assert
+        assertEquals("**** **** **** 3456", result.getContent().get(0).getMaskedNumber());
+        verify(cryptoUtil, never()).decrypt(any());
+    }
+
     @Test
     void createCard_AdminUser_CreatesCard() {
         // Arrange
@@ -110,9 +227,12 @@ class CardControllerTest {
         request.setExpiryMonth(12);
         request.setExpiryYear(2025);
 
+        byte[] fingerprint = {7, 7, 7};
         when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
-        when(cryptoUtil.encrypt("1234567890123456")).thenReturn("encryptedCardNumber");
-        when(cardRepository.save(any(Card.class))).thenAnswer(invocation -> {
+        when(cryptoUtil.fingerprint("1234567890123456")).thenReturn(fingerprint);
+        when(cardRepository.findByPanFingerprint(fingerprint)).thenReturn(Optional.empty());
+        when(cryptoUtil.encryptToBytes("1234567890123456")).thenReturn(new byte[]{1, 0, 42});
+        when(cardRepository.saveAndFlush(any(Card.class))).thenAnswer(invocation -> {
             Card card = invocation.getArgument(0);
             card.setId(2L);
             return card;
@@ -124,66 +244,133 @@ class CardControllerTest {
         // Assert
         assertNotNull(result);
         assertEquals("PETYA IVANOV", result.getOwnerName());
+        assertEquals("**** **** **** 3456", result.getMaskedNumber());
         verify(userRepository, times(1)).findById(1L);
-        verify(cryptoUtil, times(1)).encrypt("1234567890123456");
-        verify(cardRepository, times(1)).save(any(Card.class));
+        verify(cryptoUtil, times(1)).encryptToBytes("1234567890123456");
+        verify(cardRepository, times(1)).saveAndFlush(any(Card.class));
     }
 
     @Test
-    void blockCard_UserOwnsCard_BlocksCard() {
+    void createCard_DuplicateNumber_ThrowsConflict() {
         // Arrange
-        when(cardRepository.findById(1L)).thenReturn(Optional.of(testCard));
+        CardRequest request = new CardRequest();
+        request.setUserId(1L);
+        request.setCardNumber("1234567890123456");
+        byte[] fingerprint = {7, 7, 7};
+        when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
+        when(cryptoUtil.fingerprint("1234567890123456")).thenReturn(fingerprint);
+        when(cardRepository.findByPanFingerprint(fingerprint)).thenReturn(Optional.of(testCard));
+
+        // Act & Assert
+        assertThrows(DuplicateCardException.class, () -> cardController.createCard(request));
+        verify(cryptoUtil, never()).encryptToBytes(any());
+        verify(cardRepository, never()).saveAndFlush(any());
+    }
+
+    @Test
+    void createCard_ConcurrentDuplicate_ThrowsConflict() {
+        // Arrange
+        CardRequest request = new CardRequest();
+        request.setUserId(1L);
+        request.setCardNumber("1234567890123456");
+        byte[] fingerprint = {7, 7, 7};
+        when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
+        when(cryptoUtil.fingerprint("1234567890123456")).thenReturn(fingerprint);
+        when(cardRepository.findByPanFingerprint(fingerprint))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(testCard));
+        when(cardRepository.saveAndFlush(any(Card.class)))
+                .thenThrow(new DataIntegrityViolationException("ux_cards_pan_fingerprint"));
+
+        // Act & Assert
+        assertThrows(DuplicateCardException.class, () -> cardController.createCard(request));
+    }
+
+    @Test
+    void findByNumber_ExistingCard_ReturnsCardWithoutDecrypting() {
+        // Arrange
+        CardLookupRequest request = new CardLookupRequest();
+        request.setCardNumber("1234567890123456");
+        byte[] fingerprint = {7, 7, 7};
+        testCard.setPanLast4("3456");
+        when(cryptoUtil.fingerprint("1234567890123456")).thenReturn(fingerprint);
+        when(cardRepository.findByPanFingerprint(fingerprint)).thenReturn(Optional.of(testCard));
 
         // Act
-        cardController.blockCard(userDetails, 1L);
+        ResponseEntity<CardDto> result = cardController.findByNumber(request);
 
         // Assert
-        assertEquals(CardStatus.BLOCKED, testCard.getStatus());
-        verify(cardRepository, times(1)).findById(1L);
-        verify(cardRepository, times(1)).save(testCard);
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertEquals("**** **** **** 3456", result.getBody().getMaskedNumber());
+        verify(cryptoUtil, never()).decrypt(any());
+        verify(cryptoUtil, never()).decryptFromBytes(any());
     }
 
     @Test
-    void blockCard_UserDoesNotOwnCard_ThrowsAccessDenied() {
+    void findByNumber_UnknownCard_ReturnsNotFound() {
         // Arrange
-        User anotherUser = User.builder()
-                .id(2L)
-                .username("anotheruser")
-                .password("encodedPassword")
-                .build();
+        CardLookupRequest request = new CardLookupRequest();
+        request.setCardNumber("0000000000000000");
+        byte[] fingerprint = {1, 2, 3};
+        when(cryptoUtil.fingerprint("0000000000000000")).thenReturn(fingerprint);
+        when(cardRepository.findByPanFingerprint(fingerprint)).thenReturn(Optional.empty());
 
-        Card anotherCard = Card.builder()
-                .id(2L)
-                .cardNumberEncrypted("encryptedCardNumber")
-                .ownerName("Another User")
-                .expiryMonth(12)
-                .expiryYear(2025)
-                .status(CardStatus.ACTIVE)
-                .balance(BigDecimal.valueOf(1000))
-                .user(anotherUser)
-                .build();
+        // Act
+        ResponseEntity<CardDto> result = cardController.findByNumber(request);
+
+        // Assert
+        assertEquals(HttpStatus.NOT_FOUND, result.getStatusCode());
+    }
+
+    @Test
+    void blockCard_UserOwnsCard_BlocksWithSingleUpdate() {
+        // Arrange
+        when(cardRepository.blockIfOwned(1L, "testuser")).thenReturn(1);
+
+        // Act
+        cardController.blockCard(userDetails, 1L);
 
-        when(cardRepository.findById(2L)).thenReturn(Optional.of(anotherCard));
+        // Assert
+        verify(cardRepository, times(1)).blockIfOwned(1L, "testuser");
+        verify(cardRepository, never()).findById(any());
+        verify(cardRepository, never()).existsById(any());
+        verify(cardRepository, never()).save(any());
+    }
+
+    @Test
+    void blockCard_UserDoesNotOwnCard_ThrowsAccessDenied() {
+        // Arrange
+        when(cardRepository.blockIfOwned(2L, "testuser")).thenReturn(0);
+        when(cardRepository.existsById(2L)).thenReturn(true);
 
         // Act & Assert
         assertThrows(AccessDeniedException.class, () ->
                 cardController.blockCard(userDetails, 2L));
-        verify(cardRepository, times(1)).findById(2L);
-        verify(cardRepository, never()).save(any());
+        verify(cardRepository, never()).block(any());
+    }
+
+    @Test
+    void blockCard_MissingCard_ThrowsNotFound() {
+        // Arrange
+        when(cardRepository.blockIfOwned(99L, "testuser")).thenReturn(0);
+        when(cardRepository.existsById(99L)).thenReturn(false);
+
+        // Act & Assert
+        assertThrows(NoSuchElementException.class, () ->
+                cardController.blockCard(userDetails, 99L));
     }
 
     @Test
     void blockCard_AdminUser_BlocksAnyCard() {
         // Arrange
-        when(cardRepository.findById(1L)).thenReturn(Optional.of(testCard));
+        when(cardRepository.block(1L)).thenReturn(1);
 
         // Act
         cardController.blockCard(adminDetails, 1L);
 
         // Assert
-        assertEquals(CardStatus.BLOCKED, testCard.getStatus());
-        verify(cardRepository, times(1)).findById(1L);
-        verify(cardRepository, times(1)).save(testCard);
+        verify(cardRepository, times(1)).block(1L);
+        verify(cardRepository, never()).blockIfOwned(any(), any());
     }
 
     @Test
@@ -194,4 +381,9 @@ class CardControllerTest {
         // Assert
         verify(cardRepository, times(1)).deleteById(1L);
     }
-}
\ No newline at end of file
+
+    private static CardRow row(Card c) {
+        return new CardRow(c.getId(), c.getPanLast4(), c.getCardNumberCipher(), c.getCardNumberEncrypted(),
+                c.getOwnerName(), c.getExpiryMonth(), c.getExpiryYear(), c.getStatus(), c.getBalance());
+    }
+}
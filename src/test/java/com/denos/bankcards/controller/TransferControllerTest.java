@@ -1,11 +1,9 @@
 package com.denos.bankcards.controller;
 
+import com.denos.bankcards.dto.BatchTransferRequest;
+import com.denos.bankcards.dto.BatchTransferResponse;
 import com.denos.bankcards.dto.TransferRequest;
-import com.denos.bankcards.entity.Card;
-import com.denos.bankcards.entity.User;
-import com.denos.bankcards.repository.CardRepository;
-import com.denos.bankcards.repository.UserRepository;
-import com.denos.bankcards.util.CryptoUtil;
+import com.denos.bankcards.service.TransferService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -18,7 +16,6 @@ import org.springframework.security.core.authority.SimpleGrantedAuthority;
 
 import java.math.BigDecimal;
 import java.util.List;
-import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -27,139 +24,69 @@ import static org.mockito.Mockito.*;
 class TransferControllerTest {
 
     @Mock
-    private CardRepository cardRepository;
-
-    @Mock
-    private UserRepository userRepository;
-
-    @Mock
-    private CryptoUtil cryptoUtil;
+    private TransferService transferService;
 
     @InjectMocks
     private TransferController transferController;
 
-    private User testUser;
-    private Card fromCard;
-    private Card toCard;
     private UserDetails userDetails;
+    private TransferRequest request;
 
     @BeforeEach
     void setUp() {
-        testUser = User.builder()
-                .id(1L)
-                .username("testuser")
-                .password("encodedPassword")
-                .build();
-
-        fromCard = Card.builder()
-                .id(1L)
-                .cardNumberEncrypted("encryptedFromCard")
-                .ownerName("PETYA IVANOV")
-                .expiryMonth(12)
-                .expiryYear(2025)
-                .balance(BigDecimal.valueOf(1000))
-                .user(testUser)
-                .build();
-
-        toCard = Card.builder()
-                .id(2L)
-                .cardNumberEncrypted("encryptedToCard")
-                .ownerName("PETYA IVANOV")
-                .expiryMonth(12)
-                .expiryYear(2025)
-                .balance(BigDecimal.valueOf(500))
-                .user(testUser)
-                .build();
-
         userDetails = org.springframework.security.core.userdetails.User.builder()
                 .username("testuser")
                 .password("password")
                 .authorities(List.of(new SimpleGrantedAuthority("ROLE_USER")))
                 .build();
-    }
 
-    @Test
-    void transfer_ValidTransfer_ReturnsSuccessMessage() {
-        // Arrange
-        TransferRequest request = new TransferRequest();
+        request = new TransferRequest();
         request.setFromCardId(1L);
         request.setToCardId(2L);
         request.setAmount(BigDecimal.valueOf(100));
+    }
 
-        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(testUser));
-        when(cardRepository.findById(1L)).thenReturn(Optional.of(fromCard));
-        when(cardRepository.findById(2L)).thenReturn(Optional.of(toCard));
-        when(cryptoUtil.decrypt("encryptedFromCard")).thenReturn("1234567890123456");
-        when(cryptoUtil.decrypt("encryptedToCard")).thenReturn("9876543210987654");
+    @Test
+    void transfer_ValidTransfer_DelegatesToService() {
+        // Arrange
+        when(transferService.transferIdempotent("testuser", request, "key-1"))
+                .thenReturn("Перевод 100₽ выполнен с карты **** **** **** 3456 на карту **** **** **** 7654");
 
         // Act
-        String result = transferController.transfer(userDetails, request);
+        String result = transferController.transfer(userDetails, "key-1", request);
 
         // Assert
         assertNotNull(result);
         assertTrue(result.contains("100"));
-        assertEquals(BigDecimal.valueOf(900), fromCard.getBalance());
-        assertEquals(BigDecimal.valueOf(600), toCard.getBalance());
-        verify(userRepository, times(1)).findByUsername("testuser");
-        verify(cardRepository, times(1)).findById(1L);
-        verify(cardRepository, times(1)).findById(2L);
-        verify(cryptoUtil, times(1)).decrypt("encryptedFromCard");
-        verify(cryptoUtil, times(1)).decrypt("encryptedToCard");
+        verify(transferService, times(1)).transferIdempotent("testuser", request, "key-1");
     }
 
     @Test
-    void transfer_InsufficientBalance_ThrowsException() {
+    void transfer_ServiceDeniesAccess_PropagatesException() {
         // Arrange
-        TransferRequest request = new TransferRequest();
-        request.setFromCardId(1L);
-        request.setToCardId(2L);
-        request.setAmount(BigDecimal.valueOf(1500));
-
-        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(testUser));
-        when(cardRepository.findById(1L)).thenReturn(Optional.of(fromCard));
-        when(cardRepository.findById(2L)).thenReturn(Optional.of(toCard));
+        when(transferService.transferIdempotent("testuser", request, null))
+                .thenThrow(new AccessDeniedException("Вы можете переводить только между своими картами"));
 
         // Act & Assert
-        assertThrows(RuntimeException.class, () ->
-                transferController.transfer(userDetails, request));
-        verify(userRepository, times(1)).findByUsername("testuser");
-        verify(cardRepository, times(1)).findById(1L);
-        verify(cardRepository, times(1)).findById(2L);
+        assertThrows(AccessDeniedException.class, () ->
+                transferController.transfer(userDetails, null, request));
+        verify(transferService, times(1)).transferIdempotent("testuser", request, null);
     }
 
     @Test
-    void transfer_NotOwnCard_ThrowsAccessDenied() {
+    void transferBatch_ValidBatch_DelegatesToService() {
         // Arrange
-        User anotherUser = User.builder()
-                .id(2L)
-                .username("anotheruser")
-                .password("encodedPassword")
-                .build();
-
-        Card foreignCard = Card.builder()
-                .id(3L)
-                .cardNumberEncrypted("encryptedForeignCard")
-                .ownerName("Another User")
-                .expiryMonth(12)
-                .expiryYear(2025)
-                .balance(BigDecimal.valueOf(1000))
-                .user(anotherUser)
-                .build();
+        BatchTransferRequest batch = new BatchTransferRequest();
+        batch.setTransfers(List.of(request));
+        BatchTransferResponse response = new BatchTransferResponse();
+        response.setSucceeded(1);
+        when(transferService.transferBatch("testuser", batch)).thenReturn(response);
 
-        TransferRequest request = new TransferRequest();
-        request.setFromCardId(1L);
-        request.setToCardId(3L);
-        request.setAmount(BigDecimal.valueOf(100));
-
-        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(testUser));
-        when(cardRepository.findById(1L)).thenReturn(Optional.of(fromCard));
-        when(cardRepository.findById(3L)).thenReturn(Optional.of(foreignCard));
+        // Act
+        BatchTransferResponse result = transferController.transferBatch(userDetails, batch);
 
-        // Act & Assert
-        assertThrows(AccessDeniedException.class, () ->
-                transferController.transfer(userDetails, request));
-        verify(userRepository, times(1)).findByUsername("testuser");
-        verify(cardRepository, times(1)).findById(1L);
-        verify(cardRepository, times(1)).findById(3L);
+        // Assert
+        assertEquals(1, result.getSucceeded());
+        verify(transferService, times(1)).transferBatch("testuser", batch);
     }
-}
\ No newline at end of file
+}
@@ -1,18 +1,22 @@
 package com.denos.bankcards.controller;
 
+import com.denos.bankcards.dto.CursorPage;
 import com.denos.bankcards.dto.UserDto;
 import com.denos.bankcards.dto.UserRegisterRequest;
 import com.denos.bankcards.entity.Role;
 import com.denos.bankcards.entity.User;
 import com.denos.bankcards.enums.RoleType;
-import com.denos.bankcards.repository.RoleRepository;
 import com.denos.bankcards.repository.UserRepository;
+import com.denos.bankcards.security.RoleRegistry;
+import com.denos.bankcards.security.UserSecurityChangedEvent;
+import com.denos.bankcards.service.UserQueryService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.test.context.support.WithMockUser;
 
@@ -32,11 +36,17 @@ class UserControllerTest {
     private UserRepository userRepository;
 
     @Mock
-    private RoleRepository roleRepository;
+    private RoleRegistry roleRegistry;
 
     @Mock
     private PasswordEncoder passwordEncoder;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private UserQueryService userQueryService;
+
     @InjectMocks
     private UserController userController;
 
@@ -69,7 +79,7 @@ class UserControllerTest {
         request.setMiddleName("Петрович");
 
         when(passwordEncoder.encode("password")).thenReturn("encodedPassword");
-        when(roleRepository.findByRoleName(RoleType.ROLE_USER)).thenReturn(Optional.of(userRole));
+        when(roleRegistry.role(RoleType.ROLE_USER)).thenReturn(userRole);
         when(userRepository.save(any(User.class))).thenAnswer(invocation -> {
             User user = invocation.getArgument(0);
             user.setId(2L);
@@ -85,7 +95,7 @@ class UserControllerTest {
         assertEquals("Петя", result.getFirstName());
         assertEquals("Иванов", result.getLastName());
         verify(passwordEncoder, times(1)).encode("password");
-        verify(roleRepository, times(1)).findByRoleName(RoleType.ROLE_USER);
+        verify(roleRegistry, times(1)).role(RoleType.ROLE_USER);
         verify(userRepository, times(1)).save(any(User.class));
     }
 
@@ -94,7 +104,7 @@ class UserControllerTest {
     void me_AuthenticatedUser_ReturnsUserDto() {
         // Arrange
         Principal principal = () -> "testuser";
-        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(testUser));
+        when(userRepository.findWithRolesByUsername("testuser")).thenReturn(Optional.of(testUser));
 
         // Act
         UserDto result = userController.me(principal);
@@ -104,12 +114,13 @@ class UserControllerTest {
         assertEquals("testuser", result.getUsername());
         assertEquals("Петя", result.getFirstName());
         assertEquals("Иванов", result.getLastName());
-        verify(userRepository, times(1)).findByUsername("testuser");
+        assertEquals(Set.of(RoleType.ROLE_USER), result.getRoles());
+        verify(userRepository, times(1)).findWithRolesByUsername("testuser");
     }
 
     @Test
     @WithMockUser(roles = "ADMIN")
-    void all_AdminUser_ReturnsAllUsers() {
+    void all_AdminUser_ReturnsPageFromQueryService() {
         // Arrange
         User anotherUser = User.builder()
                 .id(2L)
@@ -122,24 +133,65 @@ class UserControllerTest {
                 .userRoles(Set.of(userRole))
                 .build();
 
-        when(userRepository.findAll()).thenReturn(List.of(testUser, anotherUser));
+        when(userQueryService.page(null, 50)).thenReturn(
+                CursorPage.of(List.of(UserDto.fromEntity(testUser), UserDto.fromEntity(anotherUser)), 50,
+                        UserDto::getId, user -> user));
 
         // Act
-        List<UserDto> result = userController.all();
+        CursorPage<UserDto> result = userController.all(null, 50);
 
         // Assert
         assertNotNull(result);
-        assertEquals(2, result.size());
-        verify(userRepository, times(1)).findAll();
+        assertEquals(2, result.getItems().size());
+        assertNull(result.getNextCursor());
+        verify(userQueryService, times(1)).page(null, 50);
+        verify(userRepository, never()).findAll();
     }
 
     @Test
     @WithMockUser(roles = "ADMIN")
     void deleteUser_AdminUser_DeletesUser() {
+        // Arrange
+        when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
+
         // Act
         userController.deleteUser(1L);
 
         // Assert
-        verify(userRepository, times(1)).deleteById(1L);
+        verify(userRepository, times(1)).delete(testUser);
+        verify(eventPublisher, times(1)).publishEvent(
+                new UserSecurityChangedEvent("testuser", UserSecurityChangedEvent.Change.DELETED));
+    }
+
+    @Test
+    void setEnabled_DisableUser_PublishesRevocation() {
+        // Arrange
+        when(userRepository.findWithRolesById(1L)).thenReturn(Optional.of(testUser));
+
+        // Act
+        UserDto result = userController.setEnabled(1L, false);
+
+        // Assert
+        assertNotNull(result);
+        assertFalse(testUser.isEnabled());
+        verify(userRepository, times(1)).save(testUser);
+        verify(eventPublisher, times(1)).publishEvent(
+                new UserSecurityChangedEvent("testuser", UserSecurityChangedEvent.Change.DISABLED));
+    }
+
+    @Test
+    void setRoles_NewRoles_ReplacesRolesAndPublishesRevocation() {
+        // Arrange
+        Role adminRole = new Role(2L, RoleType.ROLE_ADMIN);
+        when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
+        when(roleRegistry.role(RoleType.ROLE_ADMIN)).thenReturn(adminRole);
+
+        // Act
+        userController.setRoles(1L, Set.of(RoleType.ROLE_ADMIN));
+
+        // Assert
+        assertEquals(Set.of(adminRole), testUser.getUserRoles());
+        verify(eventPublisher, times(1)).publishEvent(
+                new UserSecurityChangedEvent("testuser", UserSecurityChangedEvent.Change.ROLES_CHANGED));
     }
 }
\ No newline at end of file
@@ -0,0 +1,175 @@
+package com.denos.bankcards.integration;
+
+import com.denos.bankcards.dto.CardDto;
+import com.denos.bankcards.dto.CursorPage;
+import com.denos.bankcards.dto.UserDto;
+import com.denos.bankcards.entity.Card;
+import com.denos.bankcards.entity.Role;
+import com.denos.bankcards.entity.User;
+import com.denos.bankcards.enums.CardStatus;
+import com.denos.bankcards.enums.RoleType;
+import com.denos.bankcards.repository.CardRepository;
+import com.denos.bankcards.repository.RoleRepository;
+import com.denos.bankcards.repository.UserRepository;
+import com.denos.bankcards.service.UserQueryService;
+import com.denos.bankcards.util.CryptoUtil;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Сравнивает чтение через сущности (как было в getMyCards и UserController.all) с чтением через
+ * проекции: число SQL-запросов, загруженных сущностей и коллекций и объём выделенной памяти на один запрос.
+ * Результаты печатаются, чтобы их можно было сравнить между изменениями.
+ */
+// Сравниваются SQL-пути чтения, поэтому кэш второго уровня выключен
+@TestPropertySource(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+        "spring.jpa.properties.hibernate.cache.use_query_cache=false"
+})
+class ReadPathStatisticsTest extends AbstractPostgresIntegrationTest {
+
+    private static final int USERS = 50;
+    private static final int CARDS = 200;
+    private static final int WARMUP = 20;
+    private static final int ITERATIONS = 50;
+    private static final Pageable PAGE = PageRequest.of(0, 100);
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @Autowired
+    private CryptoUtil cryptoUtil;
+
+    @Autowired
+    private UserQueryService userQueryService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate readOnly;
+
+    @BeforeEach
+    void setUp() {
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        if (userRepository.findByUsername("stats-user-0").isPresent()) {
+            return;
+        }
+        Role userRole = roleRepository.findByRoleName(RoleType.ROLE_USER).orElseThrow();
+        for (int i = 0; i < USERS; i++) {
+            userRepository.save(User.builder()
+                    .username("stats-user-" + i)
+                    .password("x")
+                    .firstName("Stats")
+                    .lastName("User")
+                    .enabled(true)
+                    .userRoles(Set.of(userRole))
+                    .build());
+        }
+        User owner = userRepository.findByUsername("user1").orElseThrow();
+        for (int i = 0; i < CARDS; i++) {
+            String pan = String.format("5599%012d", i);
+            cardRepository.save(Card.builder()
+                    .cardNumberCipher(cryptoUtil.encryptToBytes(pan))
+                    .panLast4(CryptoUtil.lastFour(pan))
+                    .panFingerprint(cryptoUtil.fingerprint(pan))
+                    .ownerName("IVAN PETROV")
+                    .expiryMonth(12)
+                    .expiryYear(2030)
+                    .status(CardStatus.ACTIVE)
+                    .balance(BigDecimal.ZERO)
+                    .user(owner)
+                    .build());
+        }
+    }
+
+    @Test
+    void myCards_ProjectionVersusEntities() {
+        Sample entities = measure(() -> {
+            User user = userRepository.findByUsername("user1").orElseThrow();
+            return cardRepository.findByUser(user, PAGE).map(c -> CardDto.fromEntity(c, cryptoUtil)).getContent();
+        });
+        Sample projection = measure(() -> cardRepository.findRowsByUsername("user1", PAGE)
+                .map(r -> CardDto.fromRow(r, cryptoUtil)).getContent());
+
+        report("getMyCards", entities, projection);
+        assertEquals(entities.items(), projection.items());
+        assertEquals(0, projection.entityLoads());
+        assertTrue(projection.statements() < entities.statements());
+    }
+
+    @Test
+    void allUsers_ProjectionVersusEntities() {
+        Sample entities = measure(() -> userRepository.findAll().stream().map(UserDto::fromEntity).toList());
+        // Страница вмещает всех пользователей: пользователи одним запросом и роли страницы вторым
+        Sample projection = measure(() -> userQueryService.page(null, CursorPage.MAX_LIMIT).getItems());
+
+        report("UserController.all", entities, projection);
+        assertEquals(entities.items(), projection.items());
+        assertEquals(0, projection.entityLoads());
+        assertEquals(0, projection.collectionLoads());
+        assertEquals(2, projection.statements());
+        assertTrue(entities.collectionLoads() >= USERS);
+    }
+
+    private Sample measure(Supplier<List<?>> path) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        for (int i = 0; i < WARMUP; i++) {
+            readOnly.execute(status -> path.get());
+        }
+        statistics.clear();
+        int items = 0;
+        long allocatedBefore = allocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            items = readOnly.execute(status -> path.get()).size();
+        }
+        long allocated = allocatedBytes() - allocatedBefore;
+        return new Sample(items,
+                statistics.getPrepareStatementCount() / ITERATIONS,
+                statistics.getEntityLoadCount() / ITERATIONS,
+                statistics.getCollectionLoadCount() / ITERATIONS,
+                allocated / ITERATIONS);
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+
+    private static void report(String name, Sample entities, Sample projection) {
+        System.out.printf("[%s] entities:   %d rows, %d statements, %d entity loads, %d collection loads, %d KB allocated%n",
+                name, entities.items(), entities.statements(), entities.entityLoads(), entities.collectionLoads(),
+                entities.allocatedBytes() / 1024);
+        System.out.printf("[%s] projection: %d rows, %d statements, %d entity loads, %d collection loads, %d KB allocated%n",
+                name, projection.items(), projection.statements(), projection.entityLoads(), projection.collectionLoads(),
+                projection.allocatedBytes() / 1024);
+    }
+
+    private record Sample(int items, long statements, long entityLoads, long collectionLoads, long allocatedBytes) {}
+}
@@ -0,0 +1,149 @@
+package com.denos.bankcards.integration;
+
+import com.denos.bankcards.security.JwtUtil;
+import liquibase.integration.spring.SpringLiquibase;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Основная БД и «реплика» — две независимые PostgreSQL с одной схемой. Данные, которые есть только на реплике,
+ * видны транзакциям readOnly и не видны остальным, так что по результату видно, куда ушёл запрос.
+ * Запросы идут через MockMvc, чтобы проверялась маршрутизация в пределах целого HTTP-запроса.
+ */
+@AutoConfigureMockMvc
+class ReadReplicaRoutingTest extends AbstractPostgresIntegrationTest {
+
+    @Container
+    static final PostgreSQLContainer<?> REPLICA = new PostgreSQLContainer<>("postgres:15").withDatabaseName("replica");
+
+    private static JdbcTemplate replicaJdbc;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @DynamicPropertySource
+    static void replica(DynamicPropertyRegistry registry) {
+        registry.add("bank.datasource.replica.jdbc-url", REPLICA::getJdbcUrl);
+        registry.add("bank.datasource.replica.username", REPLICA::getUsername);
+        registry.add("bank.datasource.replica.password", REPLICA::getPassword);
+    }
+
+    @BeforeAll
+    static void migrateReplica() throws Exception {
+        DriverManagerDataSource dataSource =
+                new DriverManagerDataSource(REPLICA.getJdbcUrl(), REPLICA.getUsername(), REPLICA.getPassword());
+        SpringLiquibase liquibase = new SpringLiquibase();
+        liquibase.setDataSource(dataSource);
+        liquibase.setChangeLog("classpath:db/migration/changelog-master.yml");
+        liquibase.setResourceLoader(new DefaultResourceLoader());
+        liquibase.afterPropertiesSet();
+        replicaJdbc = new JdbcTemplate(dataSource);
+    }
+
+    @Test
+    void readOnlyTransaction_UsesReplica_OtherwisePrimary() {
+        // Arrange
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        TransactionTemplate readWrite = new TransactionTemplate(transactionManager);
+
+        // Act
+        String readOnlyDatabase = readOnly.execute(status -> currentDatabase());
+        String readWriteDatabase = readWrite.execute(status -> currentDatabase());
+        String autoCommitDatabase = currentDatabase();
+
+        // Assert
+        assertEquals(REPLICA.getDatabaseName(), readOnlyDatabase);
+        assertEquals(POSTGRES.getDatabaseName(), readWriteDatabase);
+        assertEquals(POSTGRES.getDatabaseName(), autoCommitDatabase);
+    }
+
+    @Test
+    void me_ReadOnlyEndpoint_ServedByReplica() throws Exception {
+        // Arrange
+        String username = "replica-" + UUID.randomUUID();
+        insertUser(replicaJdbc, username, null, "ROLE_USER");
+
+        // Act & Assert
+        mockMvc.perform(get("/api/users/me").with(user(username).roles("USER")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.username").value(username));
+        assertEquals(0, jdbcTemplate.queryForObject("select count(*) from users where username = ?", Integer.class, username));
+    }
+
+    @Test
+    void setEnabled_ReadThenWriteInOneRequest_WritesToPrimary() throws Exception {
+        // Arrange: пользователь есть в обеих БД, чтение идёт с реплики
+        String username = "both-" + UUID.randomUUID();
+        long id = insertUser(jdbcTemplate, username, null, "ROLE_USER");
+        insertUser(replicaJdbc, username, id, "ROLE_USER");
+
+        // Act
+        mockMvc.perform(put("/api/users/{id}/enabled", id).param("enabled", "false")
+                        .with(user("admin").roles("ADMIN")))
+                .andExpect(status().isOk());
+
+        // Assert
+        assertFalse(jdbcTemplate.queryForObject("select enabled from users where user_id = ?", Boolean.class, id));
+        assertTrue(replicaJdbc.queryForObject("select enabled from users where user_id = ?", Boolean.class, id));
+    }
+
+    @Test
+    void jwtPrincipal_LoadedFromPrimary_NotFromReplica() throws Exception {
+        // Arrange: на отставшей реплике у пользователя ещё роль администратора
+        String username = "demoted-" + UUID.randomUUID();
+        long id = insertUser(jdbcTemplate, username, null, "ROLE_USER");
+        insertUser(replicaJdbc, username, id, "ROLE_ADMIN");
+        String token = jwtUtil.generateToken(username, List.of("ROLE_ADMIN"));
+
+        // Act & Assert
+        mockMvc.perform(get("/api/admin/export/users").header("Authorization", "Bearer " + token))
+                .andExpect(status().isForbidden());
+    }
+
+    private static long insertUser(JdbcTemplate jdbc, String username, Long id, String role) {
+        Long userId = id == null
+                ? jdbc.queryForObject("insert into users (username, first_name, last_name, password, enabled) " +
+                        "values (?, ?, ?, ?, true) returning user_id", Long.class, username, "Test", "User", "x")
+                : jdbc.queryForObject("insert into users (user_id, username, first_name, last_name, password, enabled) " +
+                        "values (?, ?, ?, ?, ?, true) returning user_id", Long.class, id, username, "Test", "User", "x");
+        jdbc.update("insert into user_roles (user_id, role_id) select ?, role_id from roles where role_name = ?",
+                userId, role);
+        return userId;
+    }
+
+    private String currentDatabase() {
+        return jdbcTemplate.queryForObject("select current_database()", String.class);
+    }
+}
@@ -0,0 +1,167 @@
+package com.denos.bankcards.integration;
+
+import com.denos.bankcards.config.SecondLevelCacheConfig;
+import com.denos.bankcards.controller.UserController;
+import com.denos.bankcards.entity.Role;
+import com.denos.bankcards.entity.User;
+import com.denos.bankcards.enums.RoleType;
+import com.denos.bankcards.repository.RoleRepository;
+import com.denos.bankcards.repository.UserRepository;
+import com.denos.bankcards.security.RoleRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Кэш второго уровня: повторные чтения пользователя и ролей не идут в БД, а изменения через UserController
+ * сразу видны следующему чтению, в том числе через кэш запросов по username.
+ */
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@WithMockUser(roles = "ADMIN")
+class SecondLevelCacheTest extends AbstractPostgresIntegrationTest {
+
+    @Autowired
+    private UserController userController;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @Autowired
+    private RoleRegistry roleRegistry;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Statistics statistics;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        user = userRepository.save(User.builder()
+                .username("cache-" + UUID.randomUUID())
+                .password("x")
+                .firstName("Cache")
+                .lastName("User")
+                .enabled(true)
+                .userRoles(Set.of(roleRegistry.role(RoleType.ROLE_USER)))
+                .build());
+        statistics.clear();
+    }
+
+    @Test
+    void findByUsername_RepeatedLookup_ServedWithoutSql() {
+        // Arrange
+        userRepository.findByUsername(user.getUsername()).orElseThrow();
+        long statements = statistics.getPrepareStatementCount();
+
+        // Act
+        User cached = userRepository.findByUsername(user.getUsername()).orElseThrow();
+
+        // Assert
+        assertEquals(user.getId(), cached.getId());
+        assertEquals(statements, statistics.getPrepareStatementCount());
+        assertTrue(statistics.getQueryRegionStatistics(SecondLevelCacheConfig.USERS_BY_USERNAME).getHitCount() > 0);
+        assertTrue(statistics.getDomainDataRegionStatistics(SecondLevelCacheConfig.USERS).getHitCount() > 0);
+        assertTrue(meterRegistry.get("cache.hit.ratio").tag("cache", SecondLevelCacheConfig.USERS).gauge().value() > 0);
+    }
+
+    @Test
+    void findById_Role_ServedFromRolesRegion() {
+        // Arrange
+        Long roleId = roleRegistry.role(RoleType.ROLE_ADMIN).getId();
+        entityManagerFactory.getCache().evict(Role.class, roleId);
+        roleRepository.findById(roleId).orElseThrow();
+        long statements = statistics.getPrepareStatementCount();
+
+        // Act
+        Role role = roleRepository.findById(roleId).orElseThrow();
+
+        // Assert
+        assertEquals(RoleType.ROLE_ADMIN, role.getRoleName());
+        assertEquals(statements, statistics.getPrepareStatementCount());
+        assertTrue(statistics.getDomainDataRegionStatistics(SecondLevelCacheConfig.ROLES).getHitCount() > 0);
+    }
+
+    @Test
+    void setEnabled_CachedUser_NextReadSeesChange() {
+        // Arrange
+        assertTrue(userRepository.findByUsername(user.getUsername()).orElseThrow().isEnabled());
+        assertTrue(userRepository.findById(user.getId()).orElseThrow().isEnabled());
+
+        // Act
+        userController.setEnabled(user.getId(), false);
+
+        // Assert
+        assertFalse(userRepository.findByUsername(user.getUsername()).orElseThrow().isEnabled());
+        assertFalse(userRepository.findById(user.getId()).orElseThrow().isEnabled());
+    }
+
+    @Test
+    void setRoles_CachedRoleCollection_NextReadSeesNewRoles() {
+        // Arrange
+        assertEquals(Set.of(RoleType.ROLE_USER), rolesByUsername());
+        assertEquals(Set.of(RoleType.ROLE_USER), rolesById());
+
+        // Act
+        userController.setRoles(user.getId(), Set.of(RoleType.ROLE_ADMIN));
+
+        // Assert
+        assertEquals(Set.of(RoleType.ROLE_ADMIN), rolesByUsername());
+        assertEquals(Set.of(RoleType.ROLE_ADMIN), rolesById());
+    }
+
+    @Test
+    void deleteUser_CachedUser_EvictedEverywhere() {
+        // Arrange
+        userRepository.findByUsername(user.getUsername()).orElseThrow();
+        rolesById();
+        assertTrue(entityManagerFactory.getCache().contains(User.class, user.getId()));
+
+        // Act
+        userController.deleteUser(user.getId());
+
+        // Assert
+        assertFalse(entityManagerFactory.getCache().contains(User.class, user.getId()));
+        assertTrue(userRepository.findByUsername(user.getUsername()).isEmpty());
+        assertTrue(userRepository.findWithRolesByUsername(user.getUsername()).isEmpty());
+        assertTrue(userRepository.findById(user.getId()).isEmpty());
+    }
+
+    private Set<RoleType> rolesByUsername() {
+        return new TransactionTemplate(transactionManager).execute(status ->
+                roleNames(userRepository.findWithRolesByUsername(user.getUsername()).orElseThrow()));
+    }
+
+    private Set<RoleType> rolesById() {
+        return new TransactionTemplate(transactionManager).execute(status ->
+                roleNames(userRepository.findById(user.getId()).orElseThrow()));
+    }
+
+    private static Set<RoleType> roleNames(User user) {
+        return user.getUserRoles().stream().map(Role::getRoleName).collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,122 @@
+package com.denos.bankcards.integration;
+
+import com.denos.bankcards.dto.TransferRequest;
+import com.denos.bankcards.entity.Card;
+import com.denos.bankcards.enums.TransferMode;
+import com.denos.bankcards.repository.CardRepository;
+import com.denos.bankcards.repository.TransferRepository;
+import com.denos.bankcards.service.TransferService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Нагрузочный тест горячих карт: встречные переводы между картами из 003-init-data.yml
+ * (карты 1, 2 у user1 и 3, 4 у user2). Для каждого {@link TransferMode} печатает пропускную способность
+ * и число потерянных обновлений, так что режимы можно сравнить на одной и той же нагрузке.
+ */
+@Tag("stress")
+class TransferConcurrencyStressTest extends AbstractPostgresIntegrationTest {
+
+    private static final int THREADS = 16;
+    private static final int TRANSFERS_PER_THREAD = 200;
+    private static final BigDecimal AMOUNT = new BigDecimal("1.00");
+
+    private static final long[][] HOT_PAIRS = {{1L, 2L}, {3L, 4L}};
+    private static final String[] OWNERS = {"user1", "user2"};
+
+    @Autowired
+    private TransferService transferService;
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private TransferRepository transferRepository;
+
+    @ParameterizedTest
+    @EnumSource(TransferMode.class)
+    void hotCards_ConcurrentOppositeTransfers_NoLostUpdates(TransferMode mode) throws Exception {
+        Map<Long, BigDecimal> initial = balances();
+        long ledgerBefore = transferRepository.count();
+        Map<Long, BigDecimal> netChange = new ConcurrentHashMap<>();
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < THREADS; t++) {
+            pool.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+                    int pair = random.nextInt(HOT_PAIRS.length);
+                    boolean forward = random.nextBoolean();
+                    long from = HOT_PAIRS[pair][forward ? 0 : 1];
+                    long to = HOT_PAIRS[pair][forward ? 1 : 0];
+
+                    TransferRequest req = new TransferRequest();
+                    req.setFromCardId(from);
+                    req.setToCardId(to);
+                    req.setAmount(AMOUNT);
+                    try {
+                        transferService.transfer(OWNERS[pair], req, mode);
+                        netChange.merge(from, AMOUNT.negate(), BigDecimal::add);
+                        netChange.merge(to, AMOUNT, BigDecimal::add);
+                        succeeded.incrementAndGet();
+                    } catch (RuntimeException ex) {
+                        failed.incrementAndGet();
+                    }
+                }
+                return null;
+            });
+        }
+
+        long startedAt = System.nanoTime();
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.MINUTES), "Нагрузка не завершилась вовремя");
+        double seconds = (System.nanoTime() - startedAt) / 1_000_000_000.0;
+
+        Map<Long, BigDecimal> actual = balances();
+        BigDecimal drift = BigDecimal.ZERO;
+        for (Map.Entry<Long, BigDecimal> entry : initial.entrySet()) {
+            BigDecimal expected = entry.getValue().add(netChange.getOrDefault(entry.getKey(), BigDecimal.ZERO));
+            drift = drift.add(expected.subtract(actual.get(entry.getKey())).abs());
+        }
+        long lostUpdates = drift.divideToIntegralValue(AMOUNT).longValue();
+
+        System.out.printf("[%s] transfers: %d ok, %d failed in %.2fs (%.0f tx/s), lost updates: %d%n",
+                mode, succeeded.get(), failed.get(), seconds, succeeded.get() / seconds, lostUpdates);
+
+        assertEquals(0, lostUpdates);
+        assertEquals(0, failed.get());
+        assertEquals(sum(initial), sum(actual));
+        assertEquals(succeeded.get(), transferRepository.count() - ledgerBefore);
+    }
+
+    private Map<Long, BigDecimal> balances() {
+        List<Long> ids = List.of(1L, 2L, 3L, 4L);
+        return cardRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Card::getId, Card::getBalance));
+    }
+
+    private static BigDecimal sum(Map<Long, BigDecimal> balances) {
+        return balances.values().stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+}
@@ -0,0 +1,103 @@
+package com.denos.bankcards.security;
+
+import com.denos.bankcards.exception.ServiceBusyException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoundedPasswordEncoderTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private BoundedPasswordEncoder encoder;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        encoder.shutdown();
+    }
+
+    @Test
+    void encodeAndMatches_FreePool_DelegatesAndRecordsLatency() {
+        // Arrange
+        encoder = new BoundedPasswordEncoder(new PlainEncoder(null), 1, 1, 1_000, meterRegistry);
+
+        // Act
+        String encoded = encoder.encode("password");
+
+        // Assert
+        assertEquals("{plain}password", encoded);
+        assertTrue(encoder.matches("password", encoded));
+        assertEquals(1, meterRegistry.get("password.hashing").tag("operation", "encode").timer().count());
+        assertEquals(1, meterRegistry.get("password.hashing").tag("operation", "matches").timer().count());
+    }
+
+    @Test
+    void matches_PoolAndQueueFull_RejectsImmediately() throws Exception {
+        // Arrange: один поток занят, единственное место в очереди занято
+        CountDownLatch started = new CountDownLatch(1);
+        encoder = new BoundedPasswordEncoder(new PlainEncoder(() -> {
+            started.countDown();
+            awaitRelease();
+        }), 1, 1, 5_000, meterRegistry);
+        CompletableFuture.runAsync(() -> encoder.matches("a", "{plain}a"));
+        started.await();
+        CompletableFuture.runAsync(() -> encoder.matches("b", "{plain}b"));
+        while (meterRegistry.get("password.hashing.queue.size").gauge().value() < 1) {
+            Thread.onSpinWait();
+        }
+
+        // Act & Assert
+        assertThrows(ServiceBusyException.class, () -> encoder.matches("c", "{plain}c"));
+        assertEquals(1.0, meterRegistry.get("password.hashing.rejected").counter().count());
+    }
+
+    @Test
+    void matches_WaitLongerThanTimeout_Rejects() throws Exception {
+        // Arrange
+        CountDownLatch started = new CountDownLatch(1);
+        encoder = new BoundedPasswordEncoder(new PlainEncoder(() -> {
+            started.countDown();
+            awaitRelease();
+        }), 1, 10, 50, meterRegistry);
+        CompletableFuture.runAsync(() -> encoder.matches("a", "{plain}a"));
+        started.await();
+
+        // Act & Assert
+        assertThrows(ServiceBusyException.class, () -> encoder.matches("b", "{plain}b"));
+    }
+
+    private void awaitRelease() {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private record PlainEncoder(Runnable onCall) implements PasswordEncoder {
+        @Override
+        public String encode(CharSequence rawPassword) {
+            run();
+            return "{plain}" + rawPassword;
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            run();
+            return ("{plain}" + rawPassword).equals(encodedPassword);
+        }
+
+        private void run() {
+            if (onCall != null) {
+                onCall.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.denos.bankcards.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClientIpResolverTest {
+
+    private final ClientIpResolver resolver = new ClientIpResolver("10.0.0.0/8, 192.168.1.5");
+
+    @Test
+    void resolve_TrustedProxy_ReturnsDistinctForwardedClients() {
+        // Act
+        String first = resolver.resolve(request("10.0.0.1", "203.0.113.7"));
+        String second = resolver.resolve(request("10.0.0.1", "198.51.100.4"));
+
+        // Assert
+        assertEquals("203.0.113.7", first);
+        assertEquals("198.51.100.4", second);
+    }
+
+    @Test
+    void resolve_ProxyChain_SkipsTrustedHopsFromTheRight() {
+        // Act
+        String result = resolver.resolve(request("10.0.0.1", "1.2.3.4, 203.0.113.7, 192.168.1.5"));
+
+        // Assert: левый адрес клиент мог подставить сам, учитывается ближайший недоверенный
+        assertEquals("203.0.113.7", result);
+    }
+
+    @Test
+    void resolve_UntrustedPeer_IgnoresForwardedHeader() {
+        // Act
+        String result = resolver.resolve(request("203.0.113.9", "1.2.3.4"));
+
+        // Assert
+        assertEquals("203.0.113.9", result);
+    }
+
+    @Test
+    void resolve_NoTrustedProxiesConfigured_UsesRemoteAddress() {
+        // Arrange
+        ClientIpResolver direct = new ClientIpResolver("");
+
+        // Act
+        String result = direct.resolve(request("10.0.0.1", "203.0.113.7"));
+
+        // Assert
+        assertEquals("10.0.0.1", result);
+    }
+
+    @Test
+    void resolve_TrustedProxyWithoutHeader_UsesRemoteAddress() {
+        // Act
+        String result = resolver.resolve(request("10.0.0.1", null));
+
+        // Assert
+        assertEquals("10.0.0.1", result);
+    }
+
+    private static MockHttpServletRequest request(String remoteAddr, String forwardedFor) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr(remoteAddr);
+        if (forwardedFor != null) {
+            request.addHeader("X-Forwarded-For", forwardedFor);
+        }
+        return request;
+    }
+}
@@ -0,0 +1,167 @@
+package com.denos.bankcards.security;
+
+import com.denos.bankcards.enums.PrincipalMode;
+import com.denos.bankcards.repository.UserRepository;
+import com.denos.bankcards.service.CustomUserDetailsService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class JwtAuthenticationFilterTest {
+
+    @Mock
+    private CustomUserDetailsService userDetailsService;
+
+    @Mock
+    private UserRepository userRepository;
+
+    private JwtUtil jwtUtil;
+    private UserSecurityEpochs securityEpochs;
+    private String token;
+
+    @BeforeEach
+    void setUp() {
+        jwtUtil = new JwtUtil(JwtSigningKey.hmac("test-secret-key-for-jwt-signing-at-least-32-bytes"),
+                3_600_000, "bank-rest", 100, new SimpleMeterRegistry());
+        securityEpochs = new UserSecurityEpochs(userRepository, 3_600_000);
+        token = jwtUtil.generateToken("testuser", List.of("ROLE_USER"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void doFilter_ClaimsMode_AuthenticatesWithoutLoadingUser() throws Exception {
+        // Arrange
+        JwtAuthenticationFilter filter = new JwtAuthenticationFilter(
+                jwtUtil, userDetailsService, securityEpochs, PrincipalMode.CLAIMS);
+        MockFilterChain chain = new MockFilterChain();
+
+        // Act
+        filter.doFilter(request(), new MockHttpServletResponse(), chain);
+
+        // Assert
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        assertNotNull(chain.getRequest());
+        assertEquals("testuser", ((UserDetails) auth.getPrincipal()).getUsername());
+        assertTrue(auth.getAuthorities().contains(new SimpleGrantedAuthority("ROLE_USER")));
+        verifyNoInteractions(userDetailsService);
+    }
+
+    @Test
+    void doFilter_DatabaseMode_LoadsUser() throws Exception {
+        // Arrange
+        JwtAuthenticationFilter filter = new JwtAuthenticationFilter(
+                jwtUtil, userDetailsService, securityEpochs, PrincipalMode.DATABASE);
+        when(userDetailsService.loadUserByUsername("testuser")).thenReturn(User.withUsername("testuser")
+                .password("password")
+                .authorities(List.of(new SimpleGrantedAuthority("ROLE_USER")))
+                .build());
+
+        // Act
+        filter.doFilter(request(), new MockHttpServletResponse(), new MockFilterChain());
+
+        // Assert
+        assertNotNull(SecurityContextHolder.getContext().getAuthentication());
+        verify(userDetailsService, times(1)).loadUserByUsername("testuser");
+    }
+
+    @Test
+    void doFilter_UserDisabledAfterLogin_Returns401() throws Exception {
+        // Arrange
+        JwtAuthenticationFilter filter = new JwtAuthenticationFilter(
+                jwtUtil, userDetailsService, securityEpochs, PrincipalMode.CLAIMS);
+        securityEpochs.onUserSecurityChanged(
+                new UserSecurityChangedEvent("testuser", UserSecurityChangedEvent.Change.DISABLED));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        // Act
+        filter.doFilter(request(), response, chain);
+
+        // Assert
+        assertEquals(401, response.getStatus());
+        assertNull(chain.getRequest());
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    @Test
+    void doFilter_RolesChangedAfterLogin_Returns401() throws Exception {
+        // Arrange
+        JwtAuthenticationFilter filter = new JwtAuthenticationFilter(
+                jwtUtil, userDetailsService, securityEpochs, PrincipalMode.CLAIMS);
+        securityEpochs.onUserSecurityChanged(
+                new UserSecurityChangedEvent("testuser", UserSecurityChangedEvent.Change.ROLES_CHANGED));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Act
+        filter.doFilter(request(), response, new MockFilterChain());
+
+        // Assert
+        assertEquals(401, response.getStatus());
+    }
+
+    @Test
+    void doFilter_TokenIssuedRightAfterReenable_Authenticates() throws Exception {
+        // Arrange: новый вход в ту же секунду, что и повторное включение пользователя
+        JwtAuthenticationFilter filter = new JwtAuthenticationFilter(
+                jwtUtil, userDetailsService, securityEpochs, PrincipalMode.CLAIMS);
+        securityEpochs.onUserSecurityChanged(
+                new UserSecurityChangedEvent("testuser", UserSecurityChangedEvent.Change.ENABLED));
+        Thread.sleep(2);
+        token = jwtUtil.generateToken("testuser", List.of("ROLE_USER"));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        // Act
+        filter.doFilter(request(), response, chain);
+
+        // Assert
+        assertEquals(200, response.getStatus());
+        assertNotNull(chain.getRequest());
+    }
+
+    @Test
+    void doFilter_InvalidToken_Returns401() throws Exception {
+        // Arrange
+        JwtAuthenticationFilter filter = new JwtAuthenticationFilter(
+                jwtUtil, userDetailsService, securityEpochs, PrincipalMode.CLAIMS);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Authorization", "Bearer not-a-jwt");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Act
+        filter.doFilter(request, response, new MockFilterChain());
+
+        // Assert
+        assertEquals(401, response.getStatus());
+        verify(userDetailsService, never()).loadUserByUsername(any());
+    }
+
+    private MockHttpServletRequest request() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Authorization", "Bearer " + token);
+        return request;
+    }
+}
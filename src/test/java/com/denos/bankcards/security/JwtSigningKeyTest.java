@@ -0,0 +1,79 @@
+package com.denos.bankcards.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtSigningKeyTest {
+
+    @Test
+    void jwks_Es256_PublishesPublicKeyCoordinates() throws Exception {
+        // Arrange
+        KeyPair keyPair = p256();
+        ECPublicKey pub = (ECPublicKey) keyPair.getPublic();
+        JwtSigningKey signingKey = JwtSigningKey.es256(
+                Base64.getEncoder().encodeToString(keyPair.getPrivate().getEncoded()),
+                Base64.getEncoder().encodeToString(pub.getEncoded()),
+                "key-1");
+
+        // Act
+        List<?> keys = (List<?>) signingKey.jwks().get("keys");
+
+        // Assert
+        assertEquals(1, keys.size());
+        Map<?, ?> jwk = (Map<?, ?>) keys.get(0);
+        assertEquals("EC", jwk.get("kty"));
+        assertEquals("P-256", jwk.get("crv"));
+        assertEquals("ES256", jwk.get("alg"));
+        assertEquals("key-1", jwk.get("kid"));
+        assertFalse(jwk.containsKey("d"));
+        byte[] x = Base64.getUrlDecoder().decode((String) jwk.get("x"));
+        byte[] y = Base64.getUrlDecoder().decode((String) jwk.get("y"));
+        assertEquals(32, x.length);
+        assertEquals(32, y.length);
+        assertEquals(pub.getW().getAffineX(), new BigInteger(1, x));
+        assertEquals(pub.getW().getAffineY(), new BigInteger(1, y));
+    }
+
+    @Test
+    void jwks_Hmac_PublishesNothing() {
+        // Act
+        JwtSigningKey signingKey = JwtSigningKey.hmac("test-secret-key-for-jwt-signing-at-least-32-bytes");
+
+        // Assert
+        assertEquals(List.of(), signingKey.jwks().get("keys"));
+        assertNull(signingKey.getKeyId());
+    }
+
+    @Test
+    void es256_KeysFromDifferentPairs_Throws() throws Exception {
+        // Arrange
+        KeyPair first = p256();
+        KeyPair second = p256();
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () ->
+                JwtSigningKey.es256(new KeyPair(second.getPublic(), first.getPrivate()), "key-1"));
+    }
+
+    @Test
+    void es256_MissingKeys_Throws() {
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> JwtSigningKey.es256("", "", "key-1"));
+    }
+
+    static KeyPair p256() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        return generator.generateKeyPair();
+    }
+}
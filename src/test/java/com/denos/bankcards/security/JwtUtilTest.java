@@ -0,0 +1,105 @@
+package com.denos.bankcards.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtUtilTest {
+
+    private static final String SECRET = "test-secret-key-for-jwt-signing-at-least-32-bytes";
+
+    private SimpleMeterRegistry meterRegistry;
+    private JwtUtil jwtUtil;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        jwtUtil = new JwtUtil(JwtSigningKey.hmac(SECRET), 3_600_000, "bank-rest", 100, meterRegistry);
+    }
+
+    @Test
+    void parseClaims_SameTokenTwice_SecondCallServedFromCache() {
+        // Arrange
+        String token = jwtUtil.generateToken("testuser", List.of("ROLE_USER"));
+
+        // Act
+        Claims first = jwtUtil.parseClaims(token);
+        Claims second = jwtUtil.parseClaims(token);
+
+        // Assert
+        assertEquals("testuser", first.getSubject());
+        assertSame(first, second);
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "jwt.claims").tag("result", "hit")
+                .functionCounter().count());
+        assertEquals(0.5, meterRegistry.get("cache.hit.ratio").tag("cache", "jwt.claims").gauge().value());
+    }
+
+    @Test
+    void parseClaims_TamperedToken_ThrowsAndIsNotCached() {
+        // Arrange
+        String token = jwtUtil.generateToken("testuser", List.of("ROLE_USER"));
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BB" : "AA");
+
+        // Act & Assert
+        assertThrows(JwtException.class, () -> jwtUtil.parseClaims(tampered));
+        assertThrows(JwtException.class, () -> jwtUtil.parseClaims(tampered));
+        assertEquals(0.0, meterRegistry.get("cache.gets").tag("cache", "jwt.claims").tag("result", "hit")
+                .functionCounter().count());
+    }
+
+    @Test
+    void parseClaims_TokenSignedWithOtherSecret_Throws() {
+        // Arrange
+        JwtUtil other = new JwtUtil(JwtSigningKey.hmac("another-secret-key-for-jwt-signing-32-bytes!!"),
+                3_600_000, "bank-rest", 100, new SimpleMeterRegistry());
+        String token = other.generateToken("testuser", List.of("ROLE_USER"));
+
+        // Act & Assert
+        assertThrows(JwtException.class, () -> jwtUtil.parseClaims(token));
+    }
+
+    @Test
+    void parseClaims_ExpiredToken_Throws() {
+        // Arrange
+        JwtUtil shortLived = new JwtUtil(JwtSigningKey.hmac(SECRET), -1_000, "bank-rest", 100, new SimpleMeterRegistry());
+        String token = shortLived.generateToken("testuser", List.of("ROLE_USER"));
+
+        // Act & Assert
+        assertThrows(ExpiredJwtException.class, () -> jwtUtil.parseClaims(token));
+    }
+
+    @Test
+    void validateToken_Es256_SignedWithKeyIdAndVerifiedByPublicKey() throws Exception {
+        // Arrange
+        JwtUtil es256 = new JwtUtil(JwtSigningKey.es256(JwtSigningKeyTest.p256(), "key-1"), 3_600_000, "bank-rest", 100,
+                new SimpleMeterRegistry());
+        String token = es256.generateToken("testuser", List.of("ROLE_USER"));
+
+        // Act
+        Jws<Claims> jws = es256.validateToken(token);
+
+        // Assert
+        assertEquals("ES256", jws.getHeader().getAlgorithm());
+        assertEquals("key-1", jws.getHeader().getKeyId());
+        assertEquals("testuser", jws.getBody().getSubject());
+    }
+
+    @Test
+    void parseClaims_Es256Util_RejectsHs256Token() throws Exception {
+        // Arrange
+        JwtUtil es256 = new JwtUtil(JwtSigningKey.es256(JwtSigningKeyTest.p256(), "key-1"), 3_600_000, "bank-rest", 100,
+                new SimpleMeterRegistry());
+        String token = jwtUtil.generateToken("testuser", List.of("ROLE_USER"));
+
+        // Act & Assert
+        assertThrows(JwtException.class, () -> es256.parseClaims(token));
+    }
+}
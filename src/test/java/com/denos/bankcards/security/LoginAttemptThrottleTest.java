@@ -0,0 +1,58 @@
+package com.denos.bankcards.security;
+
+import com.denos.bankcards.exception.TooManyAttemptsException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoginAttemptThrottleTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private LoginAttemptThrottle throttle;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        throttle = new LoginAttemptThrottle(60_000, 3, 5, 1_000, meterRegistry);
+    }
+
+    @Test
+    void acquire_UsernameLimitExceeded_Throws() {
+        // Arrange
+        for (int i = 0; i < 3; i++) {
+            throttle.acquire("testuser", "10.0.0." + i);
+        }
+
+        // Act & Assert
+        assertThrows(TooManyAttemptsException.class, () -> throttle.acquire("testuser", "10.0.0.9"));
+        assertEquals(1.0, meterRegistry.get("login.throttled").counter().count());
+    }
+
+    @Test
+    void acquire_IpLimitExceeded_ThrowsForAnyUsername() {
+        // Arrange
+        for (int i = 0; i < 5; i++) {
+            throttle.acquire("user" + i, "10.0.0.1");
+        }
+
+        // Act & Assert
+        assertThrows(TooManyAttemptsException.class, () -> throttle.acquire("another", "10.0.0.1"));
+        assertDoesNotThrow(() -> throttle.acquire("another", "10.0.0.2"));
+    }
+
+    @Test
+    void succeeded_ResetsUsernameCounter() {
+        // Arrange
+        for (int i = 0; i < 3; i++) {
+            throttle.acquire("testuser", "10.0.0." + i);
+        }
+
+        // Act
+        throttle.succeeded("testuser");
+
+        // Assert
+        assertDoesNotThrow(() -> throttle.acquire("testuser", "10.0.0.9"));
+    }
+}
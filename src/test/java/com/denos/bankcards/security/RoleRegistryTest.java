@@ -0,0 +1,105 @@
+package com.denos.bankcards.security;
+
+import com.denos.bankcards.entity.Role;
+import com.denos.bankcards.enums.RoleType;
+import com.denos.bankcards.repository.RoleRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RoleRegistryTest {
+
+    @Mock
+    private RoleRepository roleRepository;
+
+    @InjectMocks
+    private RoleRegistry roleRegistry;
+
+    @Test
+    void role_AfterRefresh_ServedFromMemory() {
+        // Arrange
+        Role userRole = new Role(1L, RoleType.ROLE_USER);
+        when(roleRepository.findAll()).thenReturn(List.of(userRole, new Role(2L, RoleType.ROLE_ADMIN)));
+        roleRegistry.refresh();
+
+        // Act
+        Role first = roleRegistry.role(RoleType.ROLE_USER);
+        Role second = roleRegistry.role(RoleType.ROLE_USER);
+
+        // Assert
+        assertSame(userRole, first);
+        assertSame(first, second);
+        verify(roleRepository, times(1)).findAll();
+    }
+
+    @Test
+    void role_MissingInSnapshot_ReloadsOnce() {
+        // Arrange
+        Role adminRole = new Role(2L, RoleType.ROLE_ADMIN);
+        when(roleRepository.findAll())
+                .thenReturn(List.of(new Role(1L, RoleType.ROLE_USER)))
+                .thenReturn(List.of(new Role(1L, RoleType.ROLE_USER), adminRole));
+        roleRegistry.refresh();
+
+        // Act
+        Role result = roleRegistry.role(RoleType.ROLE_ADMIN);
+
+        // Assert
+        assertSame(adminRole, result);
+        verify(roleRepository, times(2)).findAll();
+    }
+
+    @Test
+    void role_NotInDatabase_ThrowsException() {
+        // Arrange
+        when(roleRepository.findAll()).thenReturn(List.of());
+
+        // Act & Assert
+        assertThrows(NoSuchElementException.class, () -> roleRegistry.role(RoleType.ROLE_ADMIN));
+    }
+
+    @Test
+    void authorities_SameRoleSet_ReturnsSharedList() {
+        // Act
+        List<GrantedAuthority> first = RoleRegistry.authorities(Set.of(new Role(1L, RoleType.ROLE_USER)));
+        List<GrantedAuthority> second = RoleRegistry.authorities(Set.of(new Role(7L, RoleType.ROLE_USER)));
+        List<GrantedAuthority> fromClaims = RoleRegistry.authoritiesOfNames(List.of("ROLE_USER"));
+
+        // Assert
+        assertSame(first, second);
+        assertSame(first, fromClaims);
+        assertEquals("ROLE_USER", first.get(0).getAuthority());
+        assertThrows(UnsupportedOperationException.class, () -> first.add(first.get(0)));
+    }
+
+    @Test
+    void authoritiesOfNames_UnknownName_KeepsAllNames() {
+        // Act
+        List<GrantedAuthority> result = RoleRegistry.authoritiesOfNames(List.of("ROLE_USER", "ROLE_AUDITOR"));
+
+        // Assert
+        assertEquals(List.of("ROLE_USER", "ROLE_AUDITOR"), result.stream().map(GrantedAuthority::getAuthority).toList());
+    }
+
+    @Test
+    void names_BothRoles_InEnumOrder() {
+        // Act
+        List<String> result = RoleRegistry.names(Set.of(
+                new Role(1L, RoleType.ROLE_USER), new Role(2L, RoleType.ROLE_ADMIN)));
+
+        // Assert
+        assertEquals(List.of("ROLE_ADMIN", "ROLE_USER"), result);
+        assertEquals(List.of(), RoleRegistry.names(null));
+    }
+}
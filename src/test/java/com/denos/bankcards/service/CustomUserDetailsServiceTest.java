@@ -4,17 +4,24 @@ import com.denos.bankcards.entity.Role;
 import com.denos.bankcards.entity.User;
 import com.denos.bankcards.enums.RoleType;
 import com.denos.bankcards.repository.UserRepository;
+import com.denos.bankcards.security.UserSecurityChangedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -25,13 +32,15 @@ class CustomUserDetailsServiceTest {
     @Mock
     private UserRepository userRepository;
 
-    @InjectMocks
+    private SimpleMeterRegistry meterRegistry;
     private CustomUserDetailsService userDetailsService;
 
     private User testUser;
 
     @BeforeEach
     void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        userDetailsService = new CustomUserDetailsService(userRepository, meterRegistry, 100, 60_000);
         testUser = User.builder()
                 .id(1L)
                 .username("testuser")
@@ -44,7 +53,7 @@ class CustomUserDetailsServiceTest {
     @Test
     void loadUserByUsername_ValidUser_ReturnsUserDetails() {
         // Arrange
-        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(testUser));
+        when(userRepository.findWithRolesByUsername("testuser")).thenReturn(Optional.of(testUser));
 
         // Act
         UserDetails userDetails = userDetailsService.loadUserByUsername("testuser");
@@ -56,25 +65,25 @@ class CustomUserDetailsServiceTest {
         assertTrue(userDetails.isEnabled());
         assertTrue(userDetails.getAuthorities().stream()
                 .anyMatch(a -> a.getAuthority().equals("ROLE_USER")));
-        verify(userRepository, times(1)).findByUsername("testuser");
+        verify(userRepository, times(1)).findWithRolesByUsername("testuser");
     }
 
     @Test
     void loadUserByUsername_UserNotFound_ThrowsException() {
         // Arrange
-        when(userRepository.findByUsername("unknown")).thenReturn(Optional.empty());
+        when(userRepository.findWithRolesByUsername("unknown")).thenReturn(Optional.empty());
 
         // Act & Assert
         assertThrows(UsernameNotFoundException.class, () ->
                 userDetailsService.loadUserByUsername("unknown"));
-        verify(userRepository, times(1)).findByUsername("unknown");
+        verify(userRepository, times(1)).findWithRolesByUsername("unknown");
     }
 
     @Test
     void loadUserByUsername_DisabledUser_ReturnsDisabledUserDetails() {
         // Arrange
         testUser.setEnabled(false);
-        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(testUser));
+        when(userRepository.findWithRolesByUsername("testuser")).thenReturn(Optional.of(testUser));
 
         // Act
         UserDetails userDetails = userDetailsService.loadUserByUsername("testuser");
@@ -82,6 +91,82 @@ class CustomUserDetailsServiceTest {
         // Assert
         assertNotNull(userDetails);
         assertFalse(userDetails.isEnabled());
-        verify(userRepository, times(1)).findByUsername("testuser");
+        verify(userRepository, times(1)).findWithRolesByUsername("testuser");
     }
-}
\ No newline at end of file
+
+    @Test
+    void loadUserByUsername_SecondCall_ServedFromCache() {
+        // Arrange
+        when(userRepository.findWithRolesByUsername("testuser")).thenReturn(Optional.of(testUser));
+
+        // Act
+        UserDetails first = userDetailsService.loadUserByUsername("testuser");
+        UserDetails second = userDetailsService.loadUserByUsername("testuser");
+
+        // Assert
+        assertSame(first, second);
+        verify(userRepository, times(1)).findWithRolesByUsername("testuser");
+        assertEquals(0.5, meterRegistry.get("cache.hit.ratio").tag("cache", "user.details").gauge().value());
+    }
+
+    @Test
+    void loadUserByUsername_AfterSecurityChange_ReloadsUser() {
+        // Arrange
+        when(userRepository.findWithRolesByUsername("testuser")).thenReturn(Optional.of(testUser));
+        userDetailsService.loadUserByUsername("testuser");
+        testUser.setEnabled(false);
+
+        // Act
+        userDetailsService.onUserSecurityChanged(
+                new UserSecurityChangedEvent("testuser", UserSecurityChangedEvent.Change.DISABLED));
+        UserDetails reloaded = userDetailsService.loadUserByUsername("testuser");
+
+        // Assert
+        assertFalse(reloaded.isEnabled());
+        verify(userRepository, times(2)).findWithRolesByUsername("testuser");
+    }
+
+    @Test
+    void loadUserByUsername_UnknownUserRegisteredLater_IsFound() {
+        // Arrange
+        when(userRepository.findWithRolesByUsername("testuser"))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(testUser));
+
+        // Act & Assert
+        assertThrows(UsernameNotFoundException.class, () -> userDetailsService.loadUserByUsername("testuser"));
+        assertEquals("testuser", userDetailsService.loadUserByUsername("testuser").getUsername());
+    }
+
+    @Test
+    void loadUserByUsername_ConcurrentColdRequests_QueryOnce() throws Exception {
+        // Arrange
+        CountDownLatch queryStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(userRepository.findWithRolesByUsername("testuser")).thenAnswer(invocation -> {
+            queryStarted.countDown();
+            release.await();
+            return Optional.of(testUser);
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        try {
+            // Act
+            List<Future<UserDetails>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> userDetailsService.loadUserByUsername("testuser")));
+            }
+            queryStarted.await();
+            Thread.sleep(50);
+            release.countDown();
+
+            // Assert
+            for (Future<UserDetails> future : futures) {
+                assertEquals("testuser", future.get().getUsername());
+            }
+            verify(userRepository, times(1)).findWithRolesByUsername("testuser");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.denos.bankcards.service;
+
+import com.denos.bankcards.dto.UserDto;
+import com.denos.bankcards.entity.Card;
+import com.denos.bankcards.enums.CardStatus;
+import com.denos.bankcards.enums.RoleType;
+import com.denos.bankcards.repository.CardRepository;
+import com.denos.bankcards.repository.UserRepository;
+import com.denos.bankcards.repository.projection.UserRoleRow;
+import com.denos.bankcards.util.CryptoUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ExportServiceTest {
+
+    @Mock
+    private CardRepository cardRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private CryptoUtil cryptoUtil;
+
+    @Mock
+    private EntityManager entityManager;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private ExportService exportService;
+
+    @BeforeEach
+    void setUp() {
+        exportService = new ExportService(cardRepository, userRepository, cryptoUtil, entityManager,
+                new UserQueryService(userRepository), objectMapper);
+    }
+
+    @Test
+    void exportCards_WritesOneJsonLinePerCardAndClearsContextPerChunk() throws Exception {
+        // Arrange
+        int rows = CardRepository.EXPORT_FETCH_SIZE + 1;
+        AtomicBoolean closed = new AtomicBoolean();
+        when(cardRepository.streamAllOrderById()).thenReturn(LongStream.rangeClosed(1, rows)
+                .mapToObj(ExportServiceTest::card)
+                .onClose(() -> closed.set(true)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Act
+        long written = exportService.exportCards(out);
+
+        // Assert
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(rows, written);
+        assertEquals(rows, lines.length);
+        JsonNode first = objectMapper.readTree(lines[0]);
+        assertEquals(1, first.get("id").asLong());
+        assertEquals("**** **** **** 0001", first.get("maskedNumber").asText());
+        assertEquals(rows, objectMapper.readTree(lines[rows - 1]).get("id").asLong());
+        assertTrue(out.toString(StandardCharsets.UTF_8).endsWith("\n"));
+        verify(entityManager, times(1)).clear();
+        assertTrue(closed.get());
+        verifyNoInteractions(cryptoUtil);
+    }
+
+    @Test
+    void exportUsers_WritesProjectedRowsWithRoles() throws Exception {
+        // Arrange
+        when(userRepository.streamAllAsDto()).thenReturn(Stream.of(
+                new UserDto(1L, "user1", "Иван", "Петров", null, true),
+                new UserDto(2L, "user2", "Пётр", "Иванов", null, false)));
+        when(userRepository.findRolesByUserIdIn(List.of(1L, 2L))).thenReturn(List.of(
+                new UserRoleRow(1L, RoleType.ROLE_USER),
+                new UserRoleRow(1L, RoleType.ROLE_ADMIN)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Act
+        long written = exportService.exportUsers(out);
+
+        // Assert
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, written);
+        assertEquals("user2", objectMapper.readTree(lines[1]).get("username").asText());
+        assertFalse(objectMapper.readTree(lines[1]).get("enabled").asBoolean());
+        assertEquals(2, objectMapper.readTree(lines[0]).get("roles").size());
+        assertEquals(0, objectMapper.readTree(lines[1]).get("roles").size());
+        verify(userRepository, times(1)).findRolesByUserIdIn(anyCollection());
+        verifyNoInteractions(entityManager);
+    }
+
+    @Test
+    void exportCards_NoRows_WritesNothing() throws Exception {
+        // Arrange
+        when(cardRepository.streamAllOrderById()).thenReturn(Stream.empty());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Act & Assert
+        assertEquals(0, exportService.exportCards(out));
+        assertEquals(0, out.size());
+    }
+
+    private static Card card(long id) {
+        return Card.builder()
+                .id(id)
+                .panLast4(String.format("%04d", id % 10_000))
+                .ownerName("PETYA IVANOV")
+                .expiryMonth(12)
+                .expiryYear(2030)
+                .status(CardStatus.ACTIVE)
+                .balance(BigDecimal.TEN)
+                .build();
+    }
+}
@@ -0,0 +1,151 @@
+package com.denos.bankcards.service;
+
+import com.denos.bankcards.dto.TransferRequest;
+import com.denos.bankcards.entity.IdempotencyKey;
+import com.denos.bankcards.entity.IdempotencyRecord;
+import com.denos.bankcards.exception.IdempotencyKeyConflictException;
+import com.denos.bankcards.exception.TransferRejectedException;
+import com.denos.bankcards.repository.IdempotencyRecordRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class IdempotencyServiceTest {
+
+    @Mock
+    private IdempotencyRecordRepository repository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private IdempotencyService idempotencyService;
+    private IdempotencyRecord storedRecord;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        idempotencyService = new IdempotencyService(repository, meterRegistry, 86_400_000, 100, 600_000);
+        storedRecord = IdempotencyRecord.builder()
+                .id(new IdempotencyKey("testuser", "key-1"))
+                .requestHash("hash")
+                .response("stored response")
+                .expiresAt(Instant.now().plusSeconds(3600))
+                .build();
+    }
+
+    @Test
+    void findResponse_SecondLookup_ServedFromCache() {
+        // Arrange
+        when(repository.findById(new IdempotencyKey("testuser", "key-1"))).thenReturn(Optional.of(storedRecord));
+
+        // Act
+        Optional<String> first = idempotencyService.findResponse("testuser", "key-1", "hash");
+        Optional<String> second = idempotencyService.findResponse("testuser", "key-1", "hash");
+
+        // Assert
+        assertEquals(Optional.of("stored response"), first);
+        assertEquals(Optional.of("stored response"), second);
+        verify(repository, times(1)).findById(any());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count());
+        assertEquals(0.5, meterRegistry.get("cache.hit.ratio").gauge().value());
+    }
+
+    @Test
+    void findResponse_UnknownKey_ReturnsEmpty() {
+        // Arrange
+        when(repository.findById(any())).thenReturn(Optional.empty());
+
+        // Act & Assert
+        assertTrue(idempotencyService.findResponse("testuser", "key-2", "hash").isEmpty());
+    }
+
+    @Test
+    void findResponse_SameKeyDifferentRequest_ThrowsConflict() {
+        // Arrange
+        idempotencyService.remember(storedRecord);
+
+        // Act & Assert
+        assertThrows(IdempotencyKeyConflictException.class, () ->
+                idempotencyService.findResponse("testuser", "key-1", "other-hash"));
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    void findResponse_ExpiredKey_ReturnsEmptyAndDeletesRecord() {
+        // Arrange
+        IdempotencyKey id = new IdempotencyKey("testuser", "key-1");
+        IdempotencyRecord expired = IdempotencyRecord.builder()
+                .id(id)
+                .requestHash("hash")
+                .response("stored response")
+                .expiresAt(Instant.now().minusSeconds(1))
+                .build();
+        when(repository.findById(id)).thenReturn(Optional.of(expired));
+
+        // Act
+        Optional<String> result = idempotencyService.findResponse("testuser", "key-1", "hash");
+
+        // Assert
+        assertTrue(result.isEmpty());
+        verify(repository, times(1)).deleteIfExpired(eq(id), any());
+    }
+
+    @Test
+    void findResponse_StoredFailure_ReplaysRejection() {
+        // Arrange
+        idempotencyService.remember(IdempotencyRecord.builder()
+                .id(new IdempotencyKey("testuser", "key-1"))
+                .requestHash("hash")
+                .response("Недостаточно средств")
+                .failed(true)
+                .expiresAt(Instant.now().plusSeconds(3600))
+                .build());
+
+        // Act & Assert
+        TransferRejectedException ex = assertThrows(TransferRejectedException.class, () ->
+                idempotencyService.findResponse("testuser", "key-1", "hash"));
+        assertEquals("Недостаточно средств", ex.getMessage());
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    void record_SavesAndFlushesWithExpiry() {
+        // Arrange
+        when(repository.saveAndFlush(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        IdempotencyRecord record = idempotencyService.record("testuser", "key-1", "hash", "response");
+
+        // Assert
+        assertEquals("response", record.getResponse());
+        assertTrue(record.getExpiresAt().isAfter(record.getCreatedAt()));
+        verify(repository, times(1)).saveAndFlush(record);
+    }
+
+    @Test
+    void requestHash_EquivalentAmounts_ProduceSameHash() {
+        // Arrange
+        TransferRequest a = new TransferRequest();
+        a.setFromCardId(1L);
+        a.setToCardId(2L);
+        a.setAmount(new BigDecimal("100"));
+        TransferRequest b = new TransferRequest();
+        b.setFromCardId(1L);
+        b.setToCardId(2L);
+        b.setAmount(new BigDecimal("100.00"));
+
+        // Act & Assert
+        assertEquals(IdempotencyService.requestHash(a), IdempotencyService.requestHash(b));
+    }
+}
@@ -0,0 +1,137 @@
+package com.denos.bankcards.service;
+
+import com.denos.bankcards.entity.RefreshToken;
+import com.denos.bankcards.exception.InvalidRefreshTokenException;
+import com.denos.bankcards.repository.RefreshTokenRepository;
+import com.denos.bankcards.security.UserSecurityChangedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RefreshTokenServiceTest {
+
+    private static final String HASH_KEY = "Xz1y2r6G9yklEfj1TU3JvnkOIM3e96l9GUFBG06Im/Y=";
+
+    @Mock
+    private RefreshTokenRepository repository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private RefreshTokenService refreshTokenService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        refreshTokenService = new RefreshTokenService(repository, meterRegistry, HASH_KEY, 86_400_000);
+    }
+
+    @Test
+    void issue_StoresOnlyHashOfToken() {
+        // Act
+        String rawToken = refreshTokenService.issue("testuser");
+
+        // Assert
+        RefreshToken stored = savedTokens(1).get(0);
+        assertEquals(64, stored.getTokenHash().length());
+        assertFalse(stored.getTokenHash().contains(rawToken));
+        assertEquals("testuser", stored.getUsername());
+        assertNull(stored.getUsedAt());
+        assertTrue(stored.getExpiresAt().isAfter(Instant.now()));
+    }
+
+    @Test
+    void rotate_ValidToken_MarksUsedAndIssuesNextInSameFamily() {
+        // Arrange
+        String rawToken = refreshTokenService.issue("testuser");
+        RefreshToken current = savedTokens(1).get(0);
+        when(repository.findForUpdate(current.getTokenHash())).thenReturn(Optional.of(current));
+
+        // Act
+        RefreshTokenService.Rotation rotation = refreshTokenService.rotate(rawToken);
+
+        // Assert
+        assertEquals("testuser", rotation.username());
+        assertNotEquals(rawToken, rotation.refreshToken());
+        assertNotNull(current.getUsedAt());
+        RefreshToken next = savedTokens(2).get(1);
+        assertEquals(current.getFamilyId(), next.getFamilyId());
+        assertNotEquals(current.getTokenHash(), next.getTokenHash());
+        verify(repository, never()).deleteByFamily(any());
+    }
+
+    @Test
+    void rotate_UsedToken_RevokesWholeFamily() {
+        // Arrange
+        String rawToken = refreshTokenService.issue("testuser");
+        RefreshToken current = savedTokens(1).get(0);
+        current.setUsedAt(Instant.now());
+        when(repository.findForUpdate(current.getTokenHash())).thenReturn(Optional.of(current));
+
+        // Act & Assert
+        assertThrows(InvalidRefreshTokenException.class, () -> refreshTokenService.rotate(rawToken));
+        verify(repository, times(1)).deleteByFamily(current.getFamilyId());
+        verify(repository, times(1)).save(any());
+        assertEquals(1.0, meterRegistry.get("auth.refresh.reuse.detected").counter().count());
+    }
+
+    @Test
+    void rotate_ExpiredToken_ThrowsWithoutIssuing() {
+        // Arrange
+        RefreshTokenService shortLived = new RefreshTokenService(repository, meterRegistry, HASH_KEY, 0);
+        String rawToken = shortLived.issue("testuser");
+        RefreshToken current = savedTokens(1).get(0);
+        when(repository.findForUpdate(current.getTokenHash())).thenReturn(Optional.of(current));
+
+        // Act & Assert
+        assertThrows(InvalidRefreshTokenException.class, () -> shortLived.rotate(rawToken));
+        assertNull(current.getUsedAt());
+        verify(repository, times(1)).save(any());
+    }
+
+    @Test
+    void rotate_UnknownToken_Throws() {
+        // Arrange
+        when(repository.findForUpdate(any())).thenReturn(Optional.empty());
+
+        // Act & Assert
+        assertThrows(InvalidRefreshTokenException.class, () -> refreshTokenService.rotate("unknown"));
+        verify(repository, never()).save(any());
+    }
+
+    @Test
+    void onUserSecurityChanged_Disabled_RevokesUserTokens() {
+        // Act
+        refreshTokenService.onUserSecurityChanged(
+                new UserSecurityChangedEvent("testuser", UserSecurityChangedEvent.Change.DISABLED));
+        refreshTokenService.onUserSecurityChanged(
+                new UserSecurityChangedEvent("testuser", UserSecurityChangedEvent.Change.ROLES_CHANGED));
+
+        // Assert
+        verify(repository, times(1)).deleteByUsername("testuser");
+    }
+
+    @Test
+    void constructor_ShortHashKey_Throws() {
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () ->
+                new RefreshTokenService(repository, new SimpleMeterRegistry(), "c2hvcnQ=", 86_400_000));
+    }
+
+    private List<RefreshToken> savedTokens(int count) {
+        ArgumentCaptor<RefreshToken> captor = ArgumentCaptor.forClass(RefreshToken.class);
+        verify(repository, times(count)).save(captor.capture());
+        return captor.getAllValues();
+    }
+}
@@ -0,0 +1,564 @@
+package com.denos.bankcards.service;
+
+import com.denos.bankcards.dto.BatchTransferRequest;
+import com.denos.bankcards.dto.BatchTransferResponse;
+import com.denos.bankcards.dto.TransferRequest;
+import com.denos.bankcards.entity.Card;
+import com.denos.bankcards.entity.IdempotencyKey;
+import com.denos.bankcards.entity.IdempotencyRecord;
+import com.denos.bankcards.entity.Transfer;
+import com.denos.bankcards.entity.User;
+import com.denos.bankcards.enums.CardStatus;
+import com.denos.bankcards.enums.TransferItemStatus;
+import com.denos.bankcards.enums.TransferMode;
+import com.denos.bankcards.exception.TransferRejectedException;
+import com.denos.bankcards.repository.CardRepository;
+import com.denos.bankcards.repository.TransferRepository;
+import com.denos.bankcards.repository.projection.CardNumberView;
+import com.denos.bankcards.util.CryptoUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TransferServiceTest {
+
+    @Mock
+    private CardRepository cardRepository;
+
+    @Mock
+    private TransferRepository transferRepository;
+
+    @Mock
+    private CryptoUtil cryptoUtil;
+
+    @Mock
+    private IdempotencyService idempotencyService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private TransferService transferService;
+
+    private User testUser;
+    private Card fromCard;
+    private Card toCard;
+
+    @BeforeEach
+    void setUp() {
+        transferService = new TransferService(cardRepository, transferRepository, cryptoUtil,
+                idempotencyService, transactionManager, TransferMode.ENTITY, 10, 3, 1, 2);
+
+        testUser = User.builder()
+                .id(1L)
+                .username("testuser")
+                .password("encodedPassword")
+                .build();
+
+        fromCard = Card.builder()
+                .id(1L)
+                .cardNumberEncrypted("encryptedFromCard")
+                .ownerName("PETYA IVANOV")
+                .expiryMonth(12)
+                .expiryYear(2025)
+                .status(CardStatus.ACTIVE)
+                .balance(BigDecimal.valueOf(1000))
+                .user(testUser)
+                .build();
+
+        toCard = Card.builder()
+                .id(2L)
+                .cardNumberEncrypted("encryptedToCard")
+                .ownerName("PETYA IVANOV")
+                .expiryMonth(12)
+                .expiryYear(2025)
+                .status(CardStatus.ACTIVE)
+                .balance(BigDecimal.valueOf(500))
+                .user(testUser)
+                .build();
+    }
+
+    private TransferRequest request(Long from, Long to, long amount) {
+        TransferRequest request = new TransferRequest();
+        request.setFromCardId(from);
+        request.setToCardId(to);
+        request.setAmount(BigDecimal.valueOf(amount));
+        return request;
+    }
+
+    @Test
+    void transfer_ValidTransfer_ReturnsSuccessMessage() {
+        // Arrange
+        when(cardRepository.findOwnedByIdForUpdate(1L, "testuser")).thenReturn(Optional.of(fromCard));
+        when(cardRepository.findOwnedByIdForUpdate(2L, "testuser")).thenReturn(Optional.of(toCard));
+        when(cryptoUtil.decrypt("encryptedFromCard")).thenReturn("1234567890123456");
+        when(cryptoUtil.decrypt("encryptedToCard")).thenReturn("9876543210987654");
+
+        // Act
+        String result = transferService.transfer("testuser", request(1L, 2L, 100));
+
+        // Assert
+        assertNotNull(result);
+        assertTrue(result.contains("100"));
+        assertEquals(BigDecimal.valueOf(900), fromCard.getBalance());
+        assertEquals(BigDecimal.valueOf(600), toCard.getBalance());
+        verify(cardRepository, times(1)).findOwnedByIdForUpdate(1L, "testuser");
+        verify(cardRepository, times(1)).findOwnedByIdForUpdate(2L, "testuser");
+        verify(cryptoUtil, times(1)).decrypt("encryptedFromCard");
+        verify(cryptoUtil, times(1)).decrypt("encryptedToCard");
+
+        ArgumentCaptor<Transfer> ledger = ArgumentCaptor.forClass(Transfer.class);
+        verify(transferRepository, times(1)).save(ledger.capture());
+        assertEquals(1L, ledger.getValue().getFromCardId());
+        assertEquals(2L, ledger.getValue().getToCardId());
+        assertEquals(BigDecimal.valueOf(100), ledger.getValue().getAmount());
+        assertEquals("testuser", ledger.getValue().getInitiatedBy());
+        assertNotNull(ledger.getValue().getCreatedAt());
+    }
+
+    @Test
+    void transfer_CardsWithPanLast4_BuildsMessageWithoutDecrypt() {
+        // Arrange
+        fromCard.setPanLast4("3456");
+        toCard.setPanLast4("7654");
+        when(cardRepository.findOwnedByIdForUpdate(1L, "testuser")).thenReturn(Optional.of(fromCard));
+        when(cardRepository.findOwnedByIdForUpdate(2L, "testuser")).thenReturn(Optional.of(toCard));
+
+        // Act
+        String result = transferService.transfer("testuser", request(1L, 2L, 100));
+
+        // Assert
+        assertEquals("Перевод 100₽ выполнен с карты **** **** **** 3456 на карту **** **** **** 7654", result);
+        verifyNoInteractions(cryptoUtil);
+    }
+
+    @Test
+    void transfer_ReverseDirection_LocksCardsInAscendingIdOrder() {
+        // Arrange
+        when(cardRepository.findOwnedByIdForUpdate(1L, "testuser")).thenReturn(Optional.of(fromCard));
+        when(cardRepository.findOwnedByIdForUpdate(2L, "testuser")).thenReturn(Optional.of(toCard));
+        when(cryptoUtil.decrypt(any())).thenReturn("1234567890123456");
+
+        // Act
+        transferService.transfer("testuser", request(2L, 1L, 100));
+
+        // Assert
+        InOrder inOrder = inOrder(cardRepository);
+        inOrder.verify(cardRepository).findOwnedByIdForUpdate(1L, "testuser");
+        inOrder.verify(cardRepository).findOwnedByIdForUpdate(2L, "testuser");
+        assertEquals(BigDecimal.valueOf(1100), fromCard.getBalance());
+        assertEquals(BigDecimal.valueOf(400), toCard.getBalance());
+    }
+
+    @Test
+    void transfer_InsufficientBalance_ThrowsException() {
+        // Arrange
+        when(cardRepository.findOwnedByIdForUpdate(1L, "testuser")).thenReturn(Optional.of(fromCard));
+        when(cardRepository.findOwnedByIdForUpdate(2L, "testuser")).thenReturn(Optional.of(toCard));
+
+        // Act & Assert
+        assertThrows(RuntimeException.class, () ->
+                transferService.transfer("testuser", request(1L, 2L, 1500)));
+        assertEquals(BigDecimal.valueOf(1000), fromCard.getBalance());
+        verify(transferRepository, never()).save(any());
+        verify(cardRepository, times(1)).findOwnedByIdForUpdate(1L, "testuser");
+        verify(cardRepository, times(1)).findOwnedByIdForUpdate(2L, "testuser");
+    }
+
+    @Test
+    void transfer_NotOwnCard_ThrowsAccessDenied() {
+        // Arrange
+        // Чужая карта не возвращается запросом с проверкой владельца
+        when(cardRepository.findOwnedByIdForUpdate(1L, "testuser")).thenReturn(Optional.of(fromCard));
+        when(cardRepository.findOwnedByIdForUpdate(3L, "testuser")).thenReturn(Optional.empty());
+        when(cardRepository.existsById(3L)).thenReturn(true);
+
+        // Act & Assert
+        assertThrows(AccessDeniedException.class, () ->
+                transferService.transfer("testuser", request(1L, 3L, 100)));
+        verify(cardRepository, times(1)).findOwnedByIdForUpdate(1L, "testuser");
+        verify(cardRepository, times(1)).findOwnedByIdForUpdate(3L, "testuser");
+        assertEquals(BigDecimal.valueOf(1000), fromCard.getBalance());
+    }
+
+    @Test
+    void transfer_MissingCard_ThrowsNotFound() {
+        // Arrange
+        when(cardRepository.findOwnedByIdForUpdate(1L, "testuser")).thenReturn(Optional.of(fromCard));
+        when(cardRepository.findOwnedByIdForUpdate(99L, "testuser")).thenReturn(Optional.empty());
+        when(cardRepository.existsById(99L)).thenReturn(false);
+
+        // Act & Assert
+        assertThrows(NoSuchElementException.class, () ->
+                transferService.transfer("testuser", request(1L, 99L, 100)));
+    }
+
+    @Test
+    void transfer_SameCard_ThrowsWithoutTouchingRepositories() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () ->
+                transferService.transfer("testuser", request(1L, 1L, 100)));
+        verifyNoInteractions(cardRepository);
+    }
+
+    @Test
+    void transfer_NonPositiveAmount_ThrowsWithoutTouchingRepositories() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () ->
+                transferService.transfer("testuser", request(1L, 2L, 0)));
+        verifyNoInteractions(cardRepository);
+    }
+
+    @Test
+    void transfer_LockConflict_RetriesAndSucceeds() {
+        // Arrange
+        when(cardRepository.findOwnedByIdForUpdate(1L, "testuser"))
+                .thenThrow(new CannotAcquireLockException("deadlock detected"))
+                .thenReturn(Optional.of(fromCard));
+        when(cardRepository.findOwnedByIdForUpdate(2L, "testuser")).thenReturn(Optional.of(toCard));
+        when(cryptoUtil.decrypt(any())).thenReturn("1234567890123456");
+
+        // Act
+        String result = transferService.transfer("testuser", request(1L, 2L, 100));
+
+        // Assert
+        assertNotNull(result);
+        assertEquals(BigDecimal.valueOf(900), fromCard.getBalance());
+        verify(cardRepository, times(2)).findOwnedByIdForUpdate(1L, "testuser");
+        verify(transactionManager, times(1)).rollback(any());
+    }
+
+    @Test
+    void transfer_LockConflictPersists_GivesUpAfterMaxAttempts() {
+        // Arrange
+        when(cardRepository.findOwnedByIdForUpdate(anyLong(), any()))
+                .thenThrow(new CannotAcquireLockException("deadlock detected"));
+
+        // Act & Assert
+        assertThrows(CannotAcquireLockException.class, () ->
+                transferService.transfer("testuser", request(1L, 2L, 100)));
+        verify(cardRepository, times(3)).findOwnedByIdForUpdate(1L, "testuser");
+    }
+
+    @Test
+    void transfer_BlockedCard_ThrowsWithoutChangingBalances() {
+        // Arrange
+        toCard.setStatus(CardStatus.BLOCKED);
+        when(cardRepository.findOwnedByIdForUpdate(1L, "testuser")).thenReturn(Optional.of(fromCard));
+        when(cardRepository.findOwnedByIdForUpdate(2L, "testuser")).thenReturn(Optional.of(toCard));
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () ->
+                transferService.transfer("testuser", request(1L, 2L, 100)));
+        assertEquals(BigDecimal.valueOf(1000), fromCard.getBalance());
+        assertEquals(BigDecimal.valueOf(500), toCard.getBalance());
+    }
+
+    @Test
+    void conditionalTransfer_ValidTransfer_UsesGuardedUpdatesWithoutLoadingCards() {
+        // Arrange
+        TransferRequest req = request(1L, 2L, 100);
+        when(cardRepository.findByIdIn(List.of(1L, 2L)))
+                .thenReturn(List.of(numberView(1L, "encryptedFromCard"), numberView(2L, "encryptedToCard")));
+        when(cardRepository.debitIfAvailable(1L, "testuser", req.getAmount())).thenReturn(1);
+        when(cardRepository.creditIfActive(2L, "testuser", req.getAmount())).thenReturn(1);
+        when(cryptoUtil.decrypt("encryptedFromCard")).thenReturn("1234567890123456");
+        when(cryptoUtil.decrypt("encryptedToCard")).thenReturn("9876543210987654");
+
+        // Act
+        String result = transferService.transfer("testuser", req, TransferMode.CONDITIONAL_UPDATE);
+
+        // Assert
+        assertTrue(result.contains("3456"));
+        assertTrue(result.contains("7654"));
+        InOrder inOrder = inOrder(cardRepository);
+        inOrder.verify(cardRepository).debitIfAvailable(1L, "testuser", req.getAmount());
+        inOrder.verify(cardRepository).creditIfActive(2L, "testuser", req.getAmount());
+        verify(cardRepository, never()).findById(anyLong());
+        verify(cardRepository, never()).findOwnedByIdForUpdate(anyLong(), any());
+        verify(transferRepository, times(1)).save(any(Transfer.class));
+    }
+
+    @Test
+    void conditionalTransfer_ReverseDirection_UpdatesRowsInAscendingIdOrder() {
+        // Arrange
+        TransferRequest req = request(2L, 1L, 100);
+        when(cardRepository.findByIdIn(List.of(2L, 1L)))
+                .thenReturn(List.of(numberView(1L, "encryptedToCard"), numberView(2L, "encryptedFromCard")));
+        when(cardRepository.creditIfActive(1L, "testuser", req.getAmount())).thenReturn(1);
+        when(cardRepository.debitIfAvailable(2L, "testuser", req.getAmount())).thenReturn(1);
+        when(cryptoUtil.decrypt(any())).thenReturn("1234567890123456");
+
+        // Act
+        transferService.transfer("testuser", req, TransferMode.CONDITIONAL_UPDATE);
+
+        // Assert
+        InOrder inOrder = inOrder(cardRepository);
+        inOrder.verify(cardRepository).creditIfActive(1L, "testuser", req.getAmount());
+        inOrder.verify(cardRepository).debitIfAvailable(2L, "testuser", req.getAmount());
+    }
+
+    @Test
+    void conditionalTransfer_InsufficientBalance_ThrowsAndSkipsCredit() {
+        // Arrange
+        TransferRequest req = request(1L, 2L, 1500);
+        when(cardRepository.findByIdIn(any())).thenReturn(List.of());
+        when(cardRepository.debitIfAvailable(1L, "testuser", req.getAmount())).thenReturn(0);
+        when(cardRepository.findById(1L)).thenReturn(Optional.of(fromCard));
+        when(cardRepository.existsByIdAndUserUsername(1L, "testuser")).thenReturn(true);
+
+        // Act & Assert
+        RuntimeException ex = assertThrows(RuntimeException.class, () ->
+                transferService.transfer("testuser", req, TransferMode.CONDITIONAL_UPDATE));
+        assertEquals("Недостаточно средств", ex.getMessage());
+        verify(cardRepository, never()).creditIfActive(anyLong(), any(), any());
+        verify(transferRepository, never()).save(any());
+    }
+
+    @Test
+    void conditionalTransfer_ForeignCard_ThrowsAccessDenied() {
+        // Arrange
+        TransferRequest req = request(1L, 2L, 100);
+        when(cardRepository.findByIdIn(any())).thenReturn(List.of());
+        when(cardRepository.debitIfAvailable(1L, "testuser", req.getAmount())).thenReturn(1);
+        when(cardRepository.creditIfActive(2L, "testuser", req.getAmount())).thenReturn(0);
+        when(cardRepository.findById(2L)).thenReturn(Optional.of(toCard));
+        when(cardRepository.existsByIdAndUserUsername(2L, "testuser")).thenReturn(false);
+
+        // Act & Assert
+        assertThrows(AccessDeniedException.class, () ->
+                transferService.transfer("testuser", req, TransferMode.CONDITIONAL_UPDATE));
+    }
+
+    @Test
+    void conditionalTransfer_MissingCard_ThrowsNotFound() {
+        // Arrange
+        TransferRequest req = request(1L, 99L, 100);
+        when(cardRepository.findByIdIn(any())).thenReturn(List.of());
+        when(cardRepository.debitIfAvailable(1L, "testuser", req.getAmount())).thenReturn(1);
+        when(cardRepository.creditIfActive(99L, "testuser", req.getAmount())).thenReturn(0);
+        when(cardRepository.findById(99L)).thenReturn(Optional.empty());
+
+        // Act & Assert
+        NoSuchElementException ex = assertThrows(NoSuchElementException.class, () ->
+                transferService.transfer("testuser", req, TransferMode.CONDITIONAL_UPDATE));
+        assertEquals("Карта не найдена", ex.getMessage());
+    }
+
+    @Test
+    void conditionalTransfer_CardMissingFromNumberLookup_ThrowsNotFound() {
+        // Arrange: UPDATE прошли, но карты нет среди номеров, прочитанных до них
+        TransferRequest req = request(1L, 2L, 100);
+        when(cardRepository.findByIdIn(List.of(1L, 2L))).thenReturn(List.of(numberView(1L, "encryptedFromCard")));
+        when(cardRepository.debitIfAvailable(1L, "testuser", req.getAmount())).thenReturn(1);
+        when(cardRepository.creditIfActive(2L, "testuser", req.getAmount())).thenReturn(1);
+
+        // Act & Assert
+        NoSuchElementException ex = assertThrows(NoSuchElementException.class, () ->
+                transferService.transfer("testuser", req, TransferMode.CONDITIONAL_UPDATE));
+        assertEquals("Карта не найдена", ex.getMessage());
+    }
+
+    @Test
+    void transferBatch_MixedItems_AppliesValidAndRejectsInvalid() {
+        // Arrange
+        BatchTransferRequest batch = new BatchTransferRequest();
+        batch.setTransfers(List.of(request(1L, 2L, 300), request(2L, 1L, 5000), request(2L, 1L, 100)));
+        when(cardRepository.findAllOwnedByIdForUpdate(any(), eq("testuser"))).thenReturn(List.of(fromCard, toCard));
+
+        // Act
+        BatchTransferResponse result = transferService.transferBatch("testuser", batch);
+
+        // Assert
+        assertEquals(2, result.getSucceeded());
+        assertEquals(1, result.getFailed());
+        assertEquals(TransferItemStatus.APPLIED, result.getResults().get(0).getStatus());
+        assertEquals(TransferItemStatus.REJECTED, result.getResults().get(1).getStatus());
+        assertEquals("Недостаточно средств", result.getResults().get(1).getMessage());
+        assertEquals(TransferItemStatus.APPLIED, result.getResults().get(2).getStatus());
+        assertEquals(BigDecimal.valueOf(800), fromCard.getBalance());
+        assertEquals(BigDecimal.valueOf(700), toCard.getBalance());
+        verify(cardRepository, times(1)).findAllOwnedByIdForUpdate(any(), eq("testuser"));
+        verify(cardRepository, never()).findOwnedByIdForUpdate(anyLong(), any());
+        verify(cardRepository, never()).findExistingIds(any());
+        verify(transferRepository, times(1)).saveAll(argThat(ledger -> ((List<?>) ledger).size() == 2));
+        verifyNoInteractions(cryptoUtil);
+    }
+
+    @Test
+    void transferBatch_AllOrNothingWithFailure_RollsBackWholeBatch() {
+        // Arrange
+        BatchTransferRequest batch = new BatchTransferRequest();
+        batch.setAllOrNothing(true);
+        batch.setTransfers(List.of(request(1L, 2L, 300), request(1L, 99L, 100)));
+        SimpleTransactionStatus txStatus = new SimpleTransactionStatus();
+        when(transactionManager.getTransaction(any())).thenReturn(txStatus);
+        when(cardRepository.findAllOwnedByIdForUpdate(any(), eq("testuser"))).thenReturn(List.of(fromCard, toCard));
+        when(cardRepository.findExistingIds(any())).thenReturn(Set.of(1L, 2L));
+
+        // Act
+        BatchTransferResponse result = transferService.transferBatch("testuser", batch);
+
+        // Assert
+        assertEquals(0, result.getSucceeded());
+        assertEquals(1, result.getFailed());
+        assertEquals(TransferItemStatus.ROLLED_BACK, result.getResults().get(0).getStatus());
+        assertEquals(TransferItemStatus.REJECTED, result.getResults().get(1).getStatus());
+        assertEquals("Карта не найдена", result.getResults().get(1).getMessage());
+        assertTrue(txStatus.isRollbackOnly());
+        verify(transferRepository, never()).saveAll(any());
+    }
+
+    @Test
+    void transferBatch_ForeignCard_RejectsItemAsNotOwned() {
+        // Arrange
+        BatchTransferRequest batch = new BatchTransferRequest();
+        batch.setTransfers(List.of(request(1L, 3L, 100), request(1L, 2L, 100)));
+        when(cardRepository.findAllOwnedByIdForUpdate(any(), eq("testuser"))).thenReturn(List.of(fromCard, toCard));
+        when(cardRepository.findExistingIds(any())).thenReturn(Set.of(1L, 2L, 3L));
+
+        // Act
+        BatchTransferResponse result = transferService.transferBatch("testuser", batch);
+
+        // Assert
+        assertEquals(TransferItemStatus.REJECTED, result.getResults().get(0).getStatus());
+        assertEquals("Вы можете переводить только между своими картами", result.getResults().get(0).getMessage());
+        assertEquals(TransferItemStatus.APPLIED, result.getResults().get(1).getStatus());
+        assertEquals(BigDecimal.valueOf(900), fromCard.getBalance());
+    }
+
+    @Test
+    void transferBatch_TooLarge_ThrowsWithoutTouchingRepositories() {
+        // Arrange
+        BatchTransferRequest batch = new BatchTransferRequest();
+        batch.setTransfers(Collections.nCopies(11, request(1L, 2L, 1)));
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () ->
+                transferService.transferBatch("testuser", batch));
+        verifyNoInteractions(cardRepository);
+    }
+
+    @Test
+    void transferIdempotent_RepeatedKey_ReturnsStoredResponseWithoutTouchingCards() {
+        // Arrange
+        TransferRequest req = request(1L, 2L, 100);
+        when(idempotencyService.findResponse("testuser", "key-1", IdempotencyService.requestHash(req)))
+                .thenReturn(Optional.of("stored response"));
+
+        // Act
+        String result = transferService.transferIdempotent("testuser", req, "key-1");
+
+        // Assert
+        assertEquals("stored response", result);
+        verifyNoInteractions(cardRepository, transferRepository, transactionManager);
+    }
+
+    @Test
+    void transferIdempotent_NewKey_RecordsOutcomeInSameTransaction() {
+        // Arrange
+        TransferRequest req = request(1L, 2L, 100);
+        String hash = IdempotencyService.requestHash(req);
+        when(idempotencyService.findResponse("testuser", "key-1", hash)).thenReturn(Optional.empty());
+        when(cardRepository.findOwnedByIdForUpdate(1L, "testuser")).thenReturn(Optional.of(fromCard));
+        when(cardRepository.findOwnedByIdForUpdate(2L, "testuser")).thenReturn(Optional.of(toCard));
+        when(cryptoUtil.decrypt(any())).thenReturn("1234567890123456");
+        when(idempotencyService.record(eq("testuser"), eq("key-1"), eq(hash), any()))
+                .thenAnswer(invocation -> IdempotencyRecord.builder()
+                        .id(new IdempotencyKey("testuser", "key-1"))
+                        .requestHash(hash)
+                        .response(invocation.getArgument(3))
+                        .build());
+
+        // Act
+        String result = transferService.transferIdempotent("testuser", req, "key-1");
+
+        // Assert
+        assertTrue(result.contains("100"));
+        assertEquals(BigDecimal.valueOf(900), fromCard.getBalance());
+        verify(idempotencyService, times(1)).remember(any());
+    }
+
+    @Test
+    void transferIdempotent_ConcurrentDuplicate_ReturnsWinnerResponse() {
+        // Arrange
+        TransferRequest req = request(1L, 2L, 100);
+        String hash = IdempotencyService.requestHash(req);
+        when(idempotencyService.findResponse("testuser", "key-1", hash))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of("winner response"));
+        when(cardRepository.findOwnedByIdForUpdate(1L, "testuser")).thenReturn(Optional.of(fromCard));
+        when(cardRepository.findOwnedByIdForUpdate(2L, "testuser")).thenReturn(Optional.of(toCard));
+        when(cryptoUtil.decrypt(any())).thenReturn("1234567890123456");
+        when(idempotencyService.record(eq("testuser"), eq("key-1"), eq(hash), any()))
+                .thenThrow(new DataIntegrityViolationException("duplicate key"));
+
+        // Act
+        String result = transferService.transferIdempotent("testuser", req, "key-1");
+
+        // Assert
+        assertEquals("winner response", result);
+        verify(transactionManager, times(1)).rollback(any());
+        verify(idempotencyService, never()).remember(any());
+    }
+
+    @Test
+    void transferIdempotent_Rejected_RecordsFailureForReplay() {
+        // Arrange
+        TransferRequest req = request(1L, 2L, 1500);
+        String hash = IdempotencyService.requestHash(req);
+        when(idempotencyService.findResponse("testuser", "key-1", hash)).thenReturn(Optional.empty());
+        when(cardRepository.findOwnedByIdForUpdate(1L, "testuser")).thenReturn(Optional.of(fromCard));
+        when(cardRepository.findOwnedByIdForUpdate(2L, "testuser")).thenReturn(Optional.of(toCard));
+
+        // Act & Assert
+        assertThrows(TransferRejectedException.class, () ->
+                transferService.transferIdempotent("testuser", req, "key-1"));
+        verify(idempotencyService, times(1)).recordFailure("testuser", "key-1", hash, "Недостаточно средств");
+        verify(idempotencyService, never()).record(any(), any(), any(), any());
+    }
+
+    private static CardNumberView numberView(Long id, String encrypted) {
+        return new CardNumberView() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public String getCardNumberEncrypted() {
+                return encrypted;
+            }
+
+            @Override
+            public byte[] getCardNumberCipher() {
+                return null;
+            }
+
+            @Override
+            public String getPanLast4() {
+                return null;
+            }
+        };
+    }
+}
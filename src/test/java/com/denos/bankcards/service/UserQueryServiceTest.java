@@ -0,0 +1,89 @@
+package com.denos.bankcards.service;
+
+import com.denos.bankcards.dto.CursorPage;
+import com.denos.bankcards.dto.UserDto;
+import com.denos.bankcards.enums.RoleType;
+import com.denos.bankcards.repository.UserRepository;
+import com.denos.bankcards.repository.projection.UserRoleRow;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserQueryServiceTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @InjectMocks
+    private UserQueryService userQueryService;
+
+    @Test
+    void page_MoreRowsThanLimit_LoadsRolesForPageOnlyAndReturnsCursor() {
+        // Arrange
+        when(userRepository.findPageAsDto(0L, Limit.of(3))).thenReturn(List.of(
+                user(1L), user(2L), user(3L)));
+        when(userRepository.findRolesByUserIdIn(List.of(1L, 2L))).thenReturn(List.of(
+                new UserRoleRow(1L, RoleType.ROLE_USER),
+                new UserRoleRow(2L, RoleType.ROLE_USER),
+                new UserRoleRow(2L, RoleType.ROLE_ADMIN)));
+
+        // Act
+        CursorPage<UserDto> page = userQueryService.page(null, 2);
+
+        // Assert
+        assertEquals(2, page.getItems().size());
+        assertEquals(Set.of(RoleType.ROLE_USER), page.getItems().get(0).getRoles());
+        assertEquals(Set.of(RoleType.ROLE_USER, RoleType.ROLE_ADMIN), page.getItems().get(1).getRoles());
+        assertEquals(2L, CursorPage.decodeCursor(page.getNextCursor()));
+        verify(userRepository, times(1)).findRolesByUserIdIn(List.of(1L, 2L));
+    }
+
+    @Test
+    void page_NextCursor_ContinuesAfterLastId() {
+        // Arrange
+        when(userRepository.findPageAsDto(2L, Limit.of(3))).thenReturn(List.of(user(3L)));
+        when(userRepository.findRolesByUserIdIn(List.of(3L))).thenReturn(List.of());
+
+        // Act
+        CursorPage<UserDto> page = userQueryService.page(CursorPage.encodeCursor(2L), 2);
+
+        // Assert
+        assertEquals(1, page.getItems().size());
+        assertEquals(Set.of(), page.getItems().get(0).getRoles());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void page_EmptyPage_SkipsRolesQuery() {
+        // Arrange
+        when(userRepository.findPageAsDto(0L, Limit.of(51))).thenReturn(List.of());
+
+        // Act
+        CursorPage<UserDto> page = userQueryService.page(null, 50);
+
+        // Assert
+        assertTrue(page.getItems().isEmpty());
+        verify(userRepository, never()).findRolesByUserIdIn(anyCollection());
+    }
+
+    @Test
+    void page_LimitOutOfRange_ThrowsException() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> userQueryService.page(null, CursorPage.MAX_LIMIT + 1));
+        verifyNoInteractions(userRepository);
+    }
+
+    private static UserDto user(long id) {
+        return new UserDto(id, "user" + id, "Иван", "Петров", null, true);
+    }
+}
@@ -1,8 +1,20 @@
 package com.denos.bankcards.util;
 
+import com.denos.bankcards.config.CardKeyProperties;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class CryptoUtilTest {
@@ -11,24 +23,199 @@ class CryptoUtilTest {
 
     @BeforeEach
     void setUp() {
-        cryptoUtil = new CryptoUtil("test-secret-key-for-encryption-test");
+        // Активен ключ, выведенный из прежнего секрета, как до появления связки ключей
+        CardKeyProperties properties = keyRing(CryptoUtil.LEGACY_KEY_ID);
+        properties.setKeys(Map.of());
+        properties.setFingerprintKey("Jb0nZ1iG3wq7yqk5X0cV9u8l2Hn4o6pR1sT3vW5xY7A=");
+        cryptoUtil = new CryptoUtil(properties);
     }
 
     @Test
-    void encryptAndDecrypt_ValidData_ReturnsOriginalValue() {
+    void encryptToBytes_ValidData_DecryptsToOriginalValue() {
         // Arrange
         String originalText = "1234567890123456"; // Card number
 
         // Act
-        String encrypted = cryptoUtil.encrypt(originalText);
-        String decrypted = cryptoUtil.decrypt(encrypted);
+        byte[] encrypted = cryptoUtil.encryptToBytes(originalText);
+        String decrypted = cryptoUtil.decryptFromBytes(encrypted);
 
         // Assert
         assertNotNull(encrypted);
-        assertNotEquals(originalText, encrypted);
+        assertFalse(new String(encrypted, StandardCharsets.ISO_8859_1).contains(originalText));
         assertEquals(originalText, decrypted);
     }
 
+    @Test
+    void encryptToBytes_SamePlainText_UsesFreshIvEachTime() {
+        // Act
+        byte[] first = cryptoUtil.encryptToBytes("1234567890123456");
+        byte[] second = cryptoUtil.encryptToBytes("1234567890123456");
+
+        // Assert
+        assertFalse(Arrays.equals(first, second));
+        assertEquals(cryptoUtil.decryptFromBytes(first), cryptoUtil.decryptFromBytes(second));
+    }
+
+    @Test
+    void decrypt_CiphertextFromPreviousImplementation_ReturnsOriginalValue() throws Exception {
+        // Act
+        String decrypted = cryptoUtil.decrypt(legacyEncrypt("1234567890123456"));
+
+        // Assert
+        assertEquals("1234567890123456", decrypted);
+    }
+
+    @Test
+    void decrypt_TamperedCiphertext_Throws() throws Exception {
+        // Arrange
+        byte[] raw = Base64.getDecoder().decode(legacyEncrypt("1234567890123456"));
+        raw[raw.length - 1] ^= 1;
+
+        // Act & Assert
+        assertThrows(RuntimeException.class, () ->
+                cryptoUtil.decrypt(Base64.getEncoder().encodeToString(raw)));
+    }
+
+    @Test
+    void encryptToBytes_ValidData_WritesVersionedEnvelope() {
+        // Act
+        byte[] envelope = cryptoUtil.encryptToBytes("1234567890123456");
+
+        // Assert: заголовок 2 байта + IV 12 + 16 байт номера + тег 16
+        assertEquals(46, envelope.length);
+        assertEquals(CryptoUtil.FORMAT_V1, envelope[0]);
+        assertEquals(CryptoUtil.LEGACY_KEY_ID, envelope[1]);
+        assertEquals("1234567890123456", cryptoUtil.decryptFromBytes(envelope));
+    }
+
+    @Test
+    void toEnvelope_LegacyCiphertext_DecryptsWithoutReencryption() throws Exception {
+        // Arrange
+        String legacy = legacyEncrypt("1234567890123456");
+
+        // Act
+        byte[] envelope = CryptoUtil.toEnvelope(legacy);
+
+        // Assert
+        assertEquals(Base64.getDecoder().decode(legacy).length + 2, envelope.length);
+        assertEquals("1234567890123456", cryptoUtil.decryptFromBytes(envelope));
+    }
+
+    @Test
+    void decryptFromBytes_UnknownVersion_Throws() {
+        // Arrange
+        byte[] envelope = cryptoUtil.encryptToBytes("1234567890123456");
+        envelope[0] = 7;
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> cryptoUtil.decryptFromBytes(envelope));
+    }
+
+    @Test
+    void encryptToBytes_KeyRing_UsesActiveKeyAndReadsOlderKeys() throws Exception {
+        // Arrange
+        byte[] legacyEnvelope = CryptoUtil.toEnvelope(legacyEncrypt("1234567890123456"));
+        CryptoUtil ring = new CryptoUtil(keyRing(1));
+
+        // Act
+        byte[] envelope = ring.encryptToBytes("1234567890123456");
+
+        // Assert
+        assertEquals(1, envelope[1]);
+        assertEquals("1234567890123456", ring.decryptFromBytes(envelope));
+        assertEquals("1234567890123456", ring.decryptFromBytes(legacyEnvelope));
+        assertFalse(ring.needsRotation(envelope));
+        assertTrue(ring.needsRotation(legacyEnvelope));
+    }
+
+    @Test
+    void reencrypt_OldKey_MovesToActiveKey() {
+        // Arrange
+        byte[] oldEnvelope = new CryptoUtil(keyRing(1)).encryptToBytes("1234567890123456");
+        CryptoUtil rotated = new CryptoUtil(keyRing(2));
+
+        // Act
+        byte[] envelope = rotated.reencrypt(oldEnvelope);
+
+        // Assert
+        assertEquals(2, envelope[1]);
+        assertEquals("1234567890123456", rotated.decryptFromBytes(envelope));
+    }
+
+    @Test
+    void decryptFromBytes_UnknownKeyId_Throws() {
+        // Arrange
+        byte[] envelope = new CryptoUtil(keyRing(2)).encryptToBytes("1234567890123456");
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> cryptoUtil.decryptFromBytes(envelope));
+    }
+
+    @Test
+    void constructor_ActiveKeyMissing_Throws() {
+        // Arrange
+        CardKeyProperties properties = keyRing(1);
+        properties.setActiveKeyId(3);
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> new CryptoUtil(properties));
+    }
+
+    @Test
+    void fingerprint_SameNumber_IsDeterministicAndIgnoresFormatting() {
+        // Act
+        byte[] plain = cryptoUtil.fingerprint("1234567890123456");
+        byte[] spaced = cryptoUtil.fingerprint("1234 5678 9012 3456");
+        byte[] other = cryptoUtil.fingerprint("1234567890123457");
+
+        // Assert
+        assertEquals(32, plain.length);
+        assertArrayEquals(plain, spaced);
+        assertFalse(Arrays.equals(plain, other));
+    }
+
+    @Test
+    void fingerprint_DifferentKeys_DifferentFingerprints() {
+        // Arrange
+        CryptoUtil ring = new CryptoUtil(keyRing(1));
+
+        // Act & Assert
+        assertFalse(Arrays.equals(cryptoUtil.fingerprint("1234567890123456"),
+                ring.fingerprint("1234567890123456")));
+        assertArrayEquals(ring.fingerprint("1234567890123456"),
+                new CryptoUtil(keyRing(2)).fingerprint("1234567890123456"));
+    }
+
+    @Test
+    void encryptAllAndDecryptAll_Batch_RoundTripsInOrder() {
+        // Arrange
+        List<String> plains = List.of("1111222233334444", "5555666677778888", "9999000011112222");
+
+        // Act
+        List<byte[]> encrypted = cryptoUtil.encryptAll(plains);
+        List<String> decrypted = cryptoUtil.decryptAll(encrypted);
+
+        // Assert
+        assertEquals(3, encrypted.size());
+        assertEquals(plains, decrypted);
+    }
+
+    @Test
+    void decryptAll_EnvelopesUnderDifferentKeys_UsesKeyFromEachHeader() {
+        // Arrange
+        CryptoUtil ring = new CryptoUtil(keyRing(2));
+        List<byte[]> envelopes = List.of(
+                new CryptoUtil(keyRing(1)).encryptToBytes("1111222233334444"),
+                ring.encryptAll(List.of("5555666677778888")).get(0));
+
+        // Act
+        List<String> decrypted = ring.decryptAll(envelopes);
+
+        // Assert
+        assertEquals(2, envelopes.get(1)[1]);
+        assertEquals(List.of("1111222233334444", "5555666677778888"), decrypted);
+    }
+
     @Test
     void maskCardNumber_ValidCardNumber_ReturnsMasked() {
         // Arrange
@@ -67,4 +254,38 @@ class CryptoUtilTest {
         assertNotNull(masked);
         assertEquals("**** **** **** 3456", masked);
     }
-}
\ No newline at end of file
+
+    @Test
+    void lastFour_CardNumberWithSpaces_ReturnsDigits() {
+        // Act & Assert
+        assertEquals("3456", CryptoUtil.lastFour("1234 5678 9012 3456"));
+        assertEquals("**** **** **** 3456", CryptoUtil.maskLastFour("3456"));
+    }
+
+    // Шифрует так же, как прежняя реализация: ключ SHA-256 от секрета, Base64 от IV || ciphertext || tag
+    private static String legacyEncrypt(String plain) throws Exception {
+        byte[] key = MessageDigest.getInstance("SHA-256")
+                .digest("test-secret-key-for-encryption-test".getBytes(StandardCharsets.UTF_8));
+        byte[] iv = new byte[12];
+        new SecureRandom().nextBytes(iv);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"),
+                new GCMParameterSpec(128, iv));
+        byte[] encrypted = cipher.doFinal(plain.getBytes());
+        byte[] combined = new byte[iv.length + encrypted.length];
+        System.arraycopy(iv, 0, combined, 0, iv.length);
+        System.arraycopy(encrypted, 0, combined, iv.length, encrypted.length);
+        return Base64.getEncoder().encodeToString(combined);
+    }
+
+    private static CardKeyProperties keyRing(int activeKeyId) {
+        CardKeyProperties properties = new CardKeyProperties();
+        properties.setLegacySecret("test-secret-key-for-encryption-test");
+        properties.setActiveKeyId(activeKeyId);
+        properties.setKeys(Map.of(
+                1, "8WM7ng3LHqVZI5TXsee3pE0cI1giAebm1be05+Fk9eA=",
+                2, "q3Jr1mSx6QbJ3i0p3m0n0CkQzQJ6b3s2Yk1rQ2h0UXM="));
+        properties.setFingerprintKey("kHL1IEpQPnq0kRCYU3Y5zCeHMjoBj+T16ubpbmFXA00=");
+        return properties;
+    }
+}